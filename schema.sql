@@ -19,14 +19,31 @@ CREATE TABLE IF NOT EXISTS photo
     title             VARCHAR(100) NOT NULL,
     description       TEXT,
     original_filename VARCHAR(255),                 -- Nom d'origine pour affichage
-    storage_filename  VARCHAR(255) NOT NULL UNIQUE, -- UUID sur le disque
+    storage_filename  VARCHAR(255) NOT NULL,        -- SHA-256 du contenu (UUID pour les anciennes photos)
+    content_hash      CHAR(64),                     -- Référence vers stored_file
+    storage_volume    VARCHAR(50),                  -- Volume de stockage (NULL = volume par défaut)
+    storage_tier      VARCHAR(10)  NOT NULL DEFAULT 'HOT', -- HOT / COLD (original sur le stockage froid)
+    access_count      BIGINT       NOT NULL DEFAULT 0,     -- Requêtes sur les images de la photo
+    last_accessed_at  TIMESTAMP    NULL,            -- Dernière lecture de l'original
     content_type      VARCHAR(50)  NOT NULL,        -- ex: image/jpeg
+    file_size         BIGINT,                       -- Taille de l'original en octets
+    width             INT,                          -- Dimensions de l'original
+    height            INT,
+    rendition_widths  VARCHAR(100),                 -- Largeurs des déclinaisons générées (ex : 160,320,640)
+    image_updated_at  TIMESTAMP    NULL,            -- Sert à calculer l'ETag / Last-Modified
+    processing_status VARCHAR(20)  NOT NULL DEFAULT 'READY', -- PENDING / READY / FAILED
     visibility        ENUM ('PRIVATE', 'PUBLIC') DEFAULT 'PRIVATE',
     owner_id          BIGINT       NOT NULL,
     created_at        TIMESTAMP                  DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (owner_id) REFERENCES utilisateur (id) ON DELETE CASCADE,
-    INDEX idx_photo_owner (owner_id)
+    INDEX idx_photo_owner (owner_id, created_at),  -- Fils par curseur (created_at, id) : l'id est inclus par InnoDB
+    INDEX idx_photo_visibility (visibility, created_at),
+    INDEX idx_photo_storage (storage_filename),
+    INDEX idx_photo_tier (storage_tier, storage_filename)
 );
+-- Migration d'une base existante : ALTER TABLE photo DROP INDEX idx_photo_owner, ADD INDEX idx_photo_owner (owner_id, created_at),
+--   ADD INDEX idx_photo_visibility (visibility, created_at);
+-- Migration d'une base existante : ALTER TABLE photo DROP INDEX storage_filename;
 -- 3. Table Album
 CREATE TABLE IF NOT EXISTS album
 (
@@ -69,4 +86,29 @@ CREATE TABLE IF NOT EXISTS commentaire
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (photo_id) REFERENCES photo (id) ON DELETE CASCADE,
     FOREIGN KEY (author_id) REFERENCES utilisateur (id) ON DELETE CASCADE
-);
\ No newline at end of file
+);
+
+-- 7. Originaux stockés par contenu (dédoublonnage des uploads)
+CREATE TABLE IF NOT EXISTS stored_file
+(
+    sha256           CHAR(64) PRIMARY KEY,
+    storage_filename VARCHAR(255) NOT NULL,
+    file_size        BIGINT       NOT NULL,
+    volume           VARCHAR(50),             -- Volume de stockage (NULL = volume par défaut)
+    ref_count        INT          NOT NULL,  -- Nombre de photos qui utilisent ce fichier
+    created_at       TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- 8. Régénération des déclinaisons (point de reprise)
+CREATE TABLE IF NOT EXISTS rendition_backfill_job
+(
+    id              BIGINT AUTO_INCREMENT PRIMARY KEY,
+    status          VARCHAR(20) NOT NULL,            -- RUNNING / COMPLETED / CANCELLED
+    last_photo_id   BIGINT      NOT NULL DEFAULT 0,  -- Dernier id traité
+    total_count     BIGINT      NOT NULL,
+    processed_count BIGINT      NOT NULL DEFAULT 0,
+    failed_count    BIGINT      NOT NULL DEFAULT 0,
+    started_at      TIMESTAMP   DEFAULT CURRENT_TIMESTAMP,
+    updated_at      TIMESTAMP   NULL,
+    finished_at     TIMESTAMP   NULL
+);
@@ -0,0 +1,59 @@
+package local.epul4a.fotoshare.config;
+
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collections;
+
+/**
+ * Utilisateur connecté, gardé dans la session : identifiant, rôle et état du compte lus
+ * à la connexion, pour que les contrôleurs et les vérifications d'accès n'aient pas à relire
+ * l'utilisateur en base. statusVersion est la version des statuts de comptes (UserStatusVersion)
+ * à laquelle ces informations ont été lues.
+ */
+public class AuthenticatedUser extends User {
+
+    private final Long id;
+    private final local.epul4a.fotoshare.entity.User.Role role;
+    private final boolean enabled;
+    private final long statusVersion;
+
+    public AuthenticatedUser(local.epul4a.fotoshare.entity.User user, long statusVersion) {
+        super(user.getUsername(), user.getPasswordHash(), true, true, true, true,
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + user.getRole().name())));
+        this.id = user.getId();
+        this.role = user.getRole();
+        this.enabled = Boolean.TRUE.equals(user.getEnabled());
+        this.statusVersion = statusVersion;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public local.epul4a.fotoshare.entity.User.Role getRole() {
+        return role;
+    }
+
+    public boolean isAccountEnabled() {
+        return enabled;
+    }
+
+    public long getStatusVersion() {
+        return statusVersion;
+    }
+
+    /**
+     * Utilisateur détaché portant l'identifiant, le nom et le rôle : suffisant pour les
+     * comparaisons de propriétaire, les vérifications de rôle et comme référence d'une
+     * nouvelle photo, d'un album ou d'un commentaire, sans requête.
+     */
+    public local.epul4a.fotoshare.entity.User toUser() {
+        local.epul4a.fotoshare.entity.User user = new local.epul4a.fotoshare.entity.User();
+        user.setId(id);
+        user.setUsername(getUsername());
+        user.setRole(role);
+        user.setEnabled(enabled);
+        return user;
+    }
+}
@@ -1,28 +1,26 @@
 package local.epul4a.fotoshare.config;
 
 import local.epul4a.fotoshare.repository.UserRepository;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.User;
+import local.epul4a.fotoshare.service.UserStatusVersion;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
-import java.util.Collection;
-import java.util.Collections;
-
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final UserStatusVersion userStatusVersion;
 
-    public CustomUserDetailsService(UserRepository userRepository) {
+    public CustomUserDetailsService(UserRepository userRepository, UserStatusVersion userStatusVersion) {
         this.userRepository = userRepository;
+        this.userStatusVersion = userStatusVersion;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        long statusVersion = userStatusVersion.current();
         local.epul4a.fotoshare.entity.User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
 
@@ -30,19 +28,7 @@ public class CustomUserDetailsService implements UserDetailsService {
             throw new AccountBannedException("Your account has been banned by an administrator. Please contact support for more information.");
         }
 
-        return new User(
-                user.getUsername(),
-                user.getPasswordHash(),
-                true,
-                true,
-                true,
-                true,
-                getAuthorities(user)
-        );
-    }
-
-    private Collection<? extends GrantedAuthority> getAuthorities(local.epul4a.fotoshare.entity.User user) {
-        return Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + user.getRole().name()));
+        return new AuthenticatedUser(user, statusVersion);
     }
 }
 
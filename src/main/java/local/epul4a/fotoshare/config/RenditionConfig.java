@@ -0,0 +1,54 @@
+package local.epul4a.fotoshare.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class RenditionConfig {
+
+    /**
+     * Pool dédié à la génération des miniatures : un thread par cœur (le travail est
+     * surtout du calcul) et une file bornée. Quand la file est pleine, la tâche est refusée :
+     * le thread de la requête d'upload ne décode jamais lui-même, la photo reste PENDING et
+     * RenditionService la soumet à nouveau plus tard.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor renditionExecutor(
+            @Value("${fotoshare.renditions.threads:0}") int threads,
+            @Value("${fotoshare.renditions.queue-capacity:200}") int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("rendition-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Pool de la régénération en masse (BackfillService) : par défaut la moitié des cœurs,
+     * pour laisser de la place aux uploads traités par renditionExecutor.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor backfillExecutor(@Value("${fotoshare.backfill.threads:0}") int threads) {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(poolSize * 2);
+        executor.setThreadNamePrefix("backfill-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
@@ -2,6 +2,8 @@ package local.epul4a.fotoshare.config;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import local.epul4a.fotoshare.repository.UserRepository;
+import local.epul4a.fotoshare.service.UserStatusVersion;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -15,6 +17,7 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+import org.springframework.security.web.context.SecurityContextHolderFilter;
 
 import java.io.IOException;
 
@@ -48,13 +51,15 @@ public class SecurityConfig {
     }
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, UserStatusVersion userStatusVersion,
+                                           UserRepository userRepository) throws Exception {
         http
+                .addFilterAfter(new UserStatusFilter(userStatusVersion, userRepository), SecurityContextHolderFilter.class)
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/css/**", "/js/**", "/images/**").permitAll()
                         .requestMatchers("/", "/index", "/register", "/login").permitAll()
                         .requestMatchers("/photos/public/**").permitAll()
-                        .requestMatchers("/photos/*/image", "/photos/*/thumbnail").permitAll()
+                        .requestMatchers("/photos/*/image", "/photos/*/thumbnail", "/photos/*/rendition/*", "/photos/*/render").permitAll()
                         .requestMatchers("/admin/**").hasRole("ADMIN")
                         .anyRequest().authenticated()
                 )
@@ -0,0 +1,30 @@
+package local.epul4a.fotoshare.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+@EnableScheduling
+public class StorageConfig {
+
+    /**
+     * Pool des remontées d'originaux depuis le stockage froid (StorageTieringService).
+     * Quand la file est pleine, la remontée est abandonnée : la photo reste lisible
+     * au niveau froid et sera remontée à une prochaine lecture.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor promotionExecutor(
+            @Value("${fotoshare.storage.cold.promotion-threads:2}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("promotion-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
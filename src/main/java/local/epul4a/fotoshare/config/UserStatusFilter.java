@@ -0,0 +1,75 @@
+package local.epul4a.fotoshare.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import local.epul4a.fotoshare.entity.User;
+import local.epul4a.fotoshare.repository.UserRepository;
+import local.epul4a.fotoshare.service.UserStatusVersion;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Applique aux sessions ouvertes les changements de statut des comptes (bannissement, rôle,
+ * suppression). Tant que la version des statuts n'a pas bougé depuis la connexion, rien n'est
+ * relu ; sinon l'utilisateur est relu une fois : un compte désactivé ou supprimé est déconnecté,
+ * les autres reprennent leur rôle actuel.
+ */
+public class UserStatusFilter extends OncePerRequestFilter {
+
+    private final UserStatusVersion userStatusVersion;
+    private final UserRepository userRepository;
+    private final SecurityContextRepository securityContextRepository = new HttpSessionSecurityContextRepository();
+
+    public UserStatusFilter(UserStatusVersion userStatusVersion, UserRepository userRepository) {
+        this.userStatusVersion = userStatusVersion;
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof AuthenticatedUser principal)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        // Lue avant l'utilisateur : un changement validé entre les deux sera revu à la requête suivante
+        long version = userStatusVersion.current();
+        if (principal.getStatusVersion() == version) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        User user = userRepository.findById(principal.getId()).orElse(null);
+        if (user == null || !Boolean.TRUE.equals(user.getEnabled())) {
+            SecurityContextHolder.clearContext();
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                session.invalidate();
+            }
+            response.sendRedirect(request.getContextPath() + "/login?banned=true");
+            return;
+        }
+
+        AuthenticatedUser refreshed = new AuthenticatedUser(user, version);
+        refreshed.eraseCredentials();
+        UsernamePasswordAuthenticationToken token = UsernamePasswordAuthenticationToken.authenticated(
+                refreshed, null, refreshed.getAuthorities());
+        token.setDetails(authentication.getDetails());
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(token);
+        SecurityContextHolder.setContext(context);
+        securityContextRepository.saveContext(context, request, response);
+        chain.doFilter(request, response);
+    }
+}
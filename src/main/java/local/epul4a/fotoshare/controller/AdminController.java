@@ -2,7 +2,15 @@ package local.epul4a.fotoshare.controller;
 
 import local.epul4a.fotoshare.dto.PhotoDTO;
 import local.epul4a.fotoshare.entity.User;
+import local.epul4a.fotoshare.service.DerivedImageCache;
 import local.epul4a.fotoshare.service.PhotoService;
+import local.epul4a.fotoshare.service.RenditionBackfillService;
+import local.epul4a.fotoshare.service.RenditionService;
+import local.epul4a.fotoshare.service.StorageDrainService;
+import local.epul4a.fotoshare.service.StorageTieringService;
+import local.epul4a.fotoshare.service.StorageVolumes;
+import local.epul4a.fotoshare.service.ThumbnailCache;
+import local.epul4a.fotoshare.service.UploadMigrationService;
 import local.epul4a.fotoshare.service.UserService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -19,10 +27,30 @@ public class AdminController {
 
     private final UserService userService;
     private final PhotoService photoService;
+    private final ThumbnailCache thumbnailCache;
+    private final RenditionService renditionService;
+    private final RenditionBackfillService backfillService;
+    private final DerivedImageCache derivedImageCache;
+    private final UploadMigrationService uploadMigrationService;
+    private final StorageVolumes storageVolumes;
+    private final StorageDrainService storageDrainService;
+    private final StorageTieringService storageTieringService;
 
-    public AdminController(UserService userService, PhotoService photoService) {
+    public AdminController(UserService userService, PhotoService photoService, ThumbnailCache thumbnailCache,
+                           RenditionService renditionService, RenditionBackfillService backfillService,
+                           DerivedImageCache derivedImageCache, UploadMigrationService uploadMigrationService,
+                           StorageVolumes storageVolumes, StorageDrainService storageDrainService,
+                           StorageTieringService storageTieringService) {
         this.userService = userService;
         this.photoService = photoService;
+        this.thumbnailCache = thumbnailCache;
+        this.renditionService = renditionService;
+        this.backfillService = backfillService;
+        this.derivedImageCache = derivedImageCache;
+        this.uploadMigrationService = uploadMigrationService;
+        this.storageVolumes = storageVolumes;
+        this.storageDrainService = storageDrainService;
+        this.storageTieringService = storageTieringService;
     }
 
     @GetMapping
@@ -32,6 +60,14 @@ public class AdminController {
         
         model.addAttribute("totalUsers", totalUsers);
         model.addAttribute("totalPhotos", totalPhotos);
+        model.addAttribute("thumbnailCache", thumbnailCache);
+        model.addAttribute("renditions", renditionService);
+        model.addAttribute("backfill", backfillService.getProgress());
+        model.addAttribute("renderCache", derivedImageCache);
+        model.addAttribute("uploadMigration", uploadMigrationService);
+        model.addAttribute("storageVolumes", storageVolumes.getVolumes());
+        model.addAttribute("storageDrain", storageDrainService);
+        model.addAttribute("tiering", storageTieringService);
         
         return "admin/dashboard";
     }
@@ -54,6 +90,77 @@ public class AdminController {
         return "admin/photos";
     }
 
+    @GetMapping("/renditions")
+    public String listPhotosWithoutThumbnail(@RequestParam(defaultValue = "0") int page,
+                                             @RequestParam(defaultValue = "20") int size,
+                                             Model model) {
+        Page<PhotoDTO> photos = photoService.getPhotosWithoutThumbnail(PageRequest.of(page, size));
+        model.addAttribute("photos", photos);
+        return "admin/renditions";
+    }
+
+    @PostMapping("/renditions/backfill")
+    public String backfillThumbnails(RedirectAttributes redirectAttributes) {
+        try {
+            int scheduled = backfillService.backfillMissingThumbnails();
+            redirectAttributes.addFlashAttribute("success", scheduled + " photo(s) planifiée(s) pour la génération des miniatures");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Erreur lors du lancement : " + e.getMessage());
+        }
+        return "redirect:/admin/renditions";
+    }
+
+    @PostMapping("/renditions/regenerate")
+    public String startRegeneration(RedirectAttributes redirectAttributes) {
+        try {
+            backfillService.start();
+            redirectAttributes.addFlashAttribute("success", "Régénération de toutes les déclinaisons lancée");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Erreur lors du lancement : " + e.getMessage());
+        }
+        return "redirect:/admin";
+    }
+
+    @PostMapping("/renditions/regenerate/cancel")
+    public String cancelRegeneration(RedirectAttributes redirectAttributes) {
+        backfillService.cancel();
+        redirectAttributes.addFlashAttribute("success", "Régénération annulée");
+        return "redirect:/admin";
+    }
+
+    @PostMapping("/storage/migrate")
+    public String migrateUploadDirectory(RedirectAttributes redirectAttributes) {
+        try {
+            uploadMigrationService.start();
+            redirectAttributes.addFlashAttribute("success", "Migration du répertoire d'upload lancée");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Erreur lors du lancement : " + e.getMessage());
+        }
+        return "redirect:/admin";
+    }
+
+    @PostMapping("/storage/volumes/{name}/drain")
+    public String drainVolume(@PathVariable String name, RedirectAttributes redirectAttributes) {
+        try {
+            storageDrainService.start(name);
+            redirectAttributes.addFlashAttribute("success", "Vidage du volume " + name + " lancé");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Erreur lors du lancement : " + e.getMessage());
+        }
+        return "redirect:/admin";
+    }
+
+    @PostMapping("/storage/tiering/run")
+    public String runTiering(RedirectAttributes redirectAttributes) {
+        try {
+            storageTieringService.start();
+            redirectAttributes.addFlashAttribute("success", "Passage vers le stockage froid lancé");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Erreur lors du lancement : " + e.getMessage());
+        }
+        return "redirect:/admin";
+    }
+
     @PostMapping("/users/{id}/role")
     public String changeUserRole(@PathVariable Long id,
                                  @RequestParam String role,
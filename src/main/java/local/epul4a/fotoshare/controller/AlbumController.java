@@ -1,9 +1,11 @@
 package local.epul4a.fotoshare.controller;
 
 import local.epul4a.fotoshare.dto.AlbumDTO;
+import local.epul4a.fotoshare.dto.PhotoDTO;
 import local.epul4a.fotoshare.entity.User;
 import local.epul4a.fotoshare.service.AlbumService;
 import local.epul4a.fotoshare.service.PhotoService;
+import local.epul4a.fotoshare.service.SecurityService;
 import local.epul4a.fotoshare.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
@@ -16,16 +18,21 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.util.List;
+
 @Controller
 @RequestMapping("/albums")
 public class AlbumController {
 
     private final AlbumService albumService;
     private final UserService userService;
+    private final SecurityService securityService;
 
-    public AlbumController(AlbumService albumService, UserService userService, PhotoService photoService) {
+    public AlbumController(AlbumService albumService, UserService userService, PhotoService photoService,
+                           SecurityService securityService) {
         this.albumService = albumService;
         this.userService = userService;
+        this.securityService = securityService;
     }
 
     @GetMapping
@@ -33,7 +40,7 @@ public class AlbumController {
                             @RequestParam(defaultValue = "0") int page,
                             @RequestParam(defaultValue = "12") int size,
                             Model model) {
-        User user = userService.findByUsername(authentication.getName());
+        User user = userService.getCurrentUser(authentication);
         Page<AlbumDTO> albums = albumService.getAlbumsByOwner(user, PageRequest.of(page, size));
         model.addAttribute("albums", albums);
         return "albums/list";
@@ -62,7 +69,7 @@ public class AlbumController {
         }
 
         try {
-            User user = userService.findByUsername(authentication.getName());
+            User user = userService.getCurrentUser(authentication);
 
             if (!user.getEnabled()) {
                 redirectAttributes.addFlashAttribute("error", "Votre compte est désactivé. Vous ne pouvez pas créer d'albums.");
@@ -84,10 +91,15 @@ public class AlbumController {
                            Authentication authentication,
                            Model model) {
         AlbumDTO album = albumService.getAlbumDTO(id);
-        User user = userService.findByUsername(authentication.getName());
+        User user = userService.getCurrentUser(authentication);
         
+        List<PhotoDTO> photos = albumService.getAlbumPhotos(id);
+
         model.addAttribute("album", album);
-        model.addAttribute("photos", albumService.getAlbumPhotos(id));
+        model.addAttribute("photos", photos);
+        // Droits de toute la page en une requête : une photo dont le partage a été retiré n'est plus affichée
+        model.addAttribute("permissions", securityService.permissionLevels(authentication,
+                photos.stream().map(PhotoDTO::getId).toList()));
         model.addAttribute("canEdit", album.getOwnerId().equals(user.getId()));
         return "albums/view";
     }
@@ -96,7 +108,7 @@ public class AlbumController {
     @PreAuthorize("@securityService.canEditAlbum(authentication, #id)")
     public String showEditForm(@PathVariable Long id, Authentication authentication, Model model) {
         AlbumDTO album = albumService.getAlbumDTO(id);
-        User user = userService.findByUsername(authentication.getName());
+        User user = userService.getCurrentUser(authentication);
         
         if (!album.getOwnerId().equals(user.getId())) {
             return "redirect:/albums/" + id;
@@ -124,7 +136,7 @@ public class AlbumController {
         }
 
         try {
-            User user = userService.findByUsername(authentication.getName());
+            User user = userService.getCurrentUser(authentication);
             albumService.updateAlbum(id, dto.getName(), dto.getDescription(), user);
             redirectAttributes.addFlashAttribute("success", "Album mis à jour");
             return "redirect:/albums/" + id;
@@ -139,7 +151,7 @@ public class AlbumController {
                              Authentication authentication,
                              RedirectAttributes redirectAttributes) {
         try {
-            User user = userService.findByUsername(authentication.getName());
+            User user = userService.getCurrentUser(authentication);
             albumService.deleteAlbum(id, user);
             redirectAttributes.addFlashAttribute("success", "Album supprimé");
             return "redirect:/albums";
@@ -155,7 +167,7 @@ public class AlbumController {
                                  Authentication authentication,
                                  RedirectAttributes redirectAttributes) {
         try {
-            User user = userService.findByUsername(authentication.getName());
+            User user = userService.getCurrentUser(authentication);
             albumService.addPhotoToAlbum(albumId, photoId, user);
             redirectAttributes.addFlashAttribute("success", "Photo ajoutée à l'album");
             return "redirect:/albums/" + albumId;
@@ -171,7 +183,7 @@ public class AlbumController {
                                          Authentication authentication,
                                          RedirectAttributes redirectAttributes) {
         try {
-            User user = userService.findByUsername(authentication.getName());
+            User user = userService.getCurrentUser(authentication);
 
             albumService.addPhotoToAlbum(albumId, photoId, user);
             redirectAttributes.addFlashAttribute("success", "Photo ajoutée à l'album");
@@ -189,7 +201,7 @@ public class AlbumController {
                                       Authentication authentication,
                                       RedirectAttributes redirectAttributes) {
         try {
-            User user = userService.findByUsername(authentication.getName());
+            User user = userService.getCurrentUser(authentication);
             albumService.removePhotoFromAlbum(albumId, photoId, user);
             redirectAttributes.addFlashAttribute("success", "Photo retirée de l'album");
             return "redirect:/albums/" + albumId;
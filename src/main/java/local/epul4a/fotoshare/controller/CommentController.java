@@ -43,7 +43,7 @@ public class CommentController {
     public String addComment(@PathVariable Long photoId,
                              @RequestParam String text,
                              Authentication authentication) {
-        User user = userService.findByUsername(authentication.getName());
+        User user = userService.getCurrentUser(authentication);
 
         commentService.addComment(photoId, text, user);
         return "redirect:/photos/" + photoId + "?commented=true";
@@ -53,7 +53,7 @@ public class CommentController {
     public String deleteComment(@PathVariable Long photoId,
                                 @PathVariable Long commentId,
                                 Authentication authentication) {
-        User user = userService.findByUsername(authentication.getName());
+        User user = userService.getCurrentUser(authentication);
         commentService.deleteComment(commentId, user);
         return "redirect:/photos/" + photoId + "?commentDeleted=true";
     }
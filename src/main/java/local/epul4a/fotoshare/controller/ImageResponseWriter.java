@@ -0,0 +1,332 @@
+package local.epul4a.fotoshare.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import local.epul4a.fotoshare.service.PhotoStorage;
+import local.epul4a.fotoshare.service.StorageKey;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Envoie un fichier image vers la réponse HTTP sans jamais le charger en mémoire.
+ * Si le connecteur Tomcat supporte le sendfile, le noyau copie directement le fichier
+ * vers la socket ; sinon on passe par un FileChannel avec un tampon de taille fixe.
+ * Un fichier d'un stockage distant (S3) est relu par plages depuis le PhotoStorage.
+ * Les requêtes Range (simples ou multiples) sont servies en 206 en se positionnant
+ * directement dans le fichier. Les validateurs (ETag, Last-Modified) sont calculés par
+ * l'appelant à partir des métadonnées, ce qui permet de répondre 304 sans toucher au disque.
+ */
+@Component
+public class ImageResponseWriter {
+
+    static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final String CRLF = "\r\n";
+
+    /**
+     * Positionne Cache-Control, ETag et Last-Modified, et répond 304 si le client a déjà
+     * la bonne version. Retourne true si la réponse est terminée.
+     */
+    public boolean checkNotModified(String etag, long lastModified, String cacheControl,
+                                    HttpServletRequest request, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        return new ServletWebRequest(request, response).checkNotModified(etag, lastModified);
+    }
+
+    public void write(Path file, String contentType, String etag, long lastModified,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            response.reset();
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        write(new FileBody(file, Files.size(file), true), contentType, etag, lastModified, request, response);
+    }
+
+    /**
+     * Comme write, pour un fichier qui peut être supprimé dès le retour de l'appel (cache des
+     * variantes) : il est recopié pendant l'appel, jamais confié au sendfile qui l'ouvrirait après.
+     */
+    public void writeWithoutSendfile(Path file, String contentType, String etag, long lastModified,
+                                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            response.reset();
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        write(new FileBody(file, Files.size(file), false), contentType, etag, lastModified, request, response);
+    }
+
+    public void write(PhotoStorage storage, StorageKey key, String contentType, String etag, long lastModified,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!writeIfPresent(storage, key, contentType, etag, lastModified, request, response)) {
+            response.reset();
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    /**
+     * Comme write, mais retourne false sans rien écrire si le fichier est absent du stockage :
+     * l'appelant choisit la réponse de repli.
+     */
+    public boolean writeIfPresent(PhotoStorage storage, StorageKey key, String contentType, String etag, long lastModified,
+                                  HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = storage.size(key);
+        if (length < 0) {
+            return false;
+        }
+        write(new StorageBody(storage, key, length, storage.localFile(key)), contentType, etag, lastModified, request, response);
+        return true;
+    }
+
+    public void write(byte[] content, String contentType, String etag, long lastModified,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        write(new BytesBody(content), contentType, etag, lastModified, request, response);
+    }
+
+    private void write(Body body, String contentType, String etag, long lastModified,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = body.length();
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        List<HttpRange> ranges = requestedRanges(request, etag, lastModified);
+        if (ranges.isEmpty()) {
+            writeFull(body, contentType, request, response);
+            return;
+        }
+
+        List<long[]> bounds = resolveRanges(ranges, length);
+        if (bounds == null) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.setContentLength(0);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (bounds.size() == 1) {
+            writeSingleRange(body, bounds.get(0), contentType, request, response);
+        } else {
+            writeMultipleRanges(body, bounds, contentType, request, response);
+        }
+    }
+
+    private void writeFull(Body body, String contentType,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(contentType);
+        response.setContentLengthLong(body.length());
+
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+        if (trySendfile(body, 0, body.length(), request)) {
+            return;
+        }
+        body.transferTo(0, body.length(), response.getOutputStream());
+    }
+
+    private void writeSingleRange(Body body, long[] range, String contentType,
+                                  HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long count = range[1] - range[0] + 1;
+        response.setContentType(contentType);
+        response.setContentLengthLong(count);
+        response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(range, body.length()));
+
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+        if (trySendfile(body, range[0], range[1] + 1, request)) {
+            return;
+        }
+        body.transferTo(range[0], count, response.getOutputStream());
+    }
+
+    private void writeMultipleRanges(Body body, List<long[]> ranges, String contentType,
+                                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        byte[] closing = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+
+        long contentLength = closing.length;
+        for (long[] range : ranges) {
+            byte[] header = (CRLF + "--" + boundary + CRLF
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + CRLF
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(range, body.length()) + CRLF
+                    + CRLF).getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + (range[1] - range[0] + 1);
+        }
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            out.write(partHeaders.get(i));
+            body.transferTo(range[0], range[1] - range[0] + 1, out);
+        }
+        out.write(closing);
+    }
+
+    private List<HttpRange> requestedRanges(HttpServletRequest request, String etag, long lastModified) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !ifRangeMatches(request, etag, lastModified)) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // En-tête Range mal formé : on l'ignore et on renvoie la ressource complète
+            return List.of();
+        }
+    }
+
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range exige une comparaison forte : un ETag faible ne correspond jamais
+            return ifRange.equals(etag);
+        }
+        try {
+            long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return date != -1 && date / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private List<long[]> resolveRanges(List<HttpRange> ranges, long length) {
+        // Un fichier vide n'a aucune plage satisfiable
+        if (length == 0) {
+            return null;
+        }
+        List<long[]> bounds = new ArrayList<>(ranges.size());
+        long total = 0;
+        try {
+            for (HttpRange range : ranges) {
+                long start = range.getRangeStart(length);
+                long end = range.getRangeEnd(length);
+                // getRangeStart ne vérifie pas le début : une plage qui commence après la fin du fichier est refusée
+                if (start >= length || start > end) {
+                    return null;
+                }
+                bounds.add(new long[]{start, end});
+                total += end - start + 1;
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        // Même garde-fou que Spring : des plages qui se recouvrent ne doivent pas dépasser la taille du fichier
+        if (ranges.size() > 1 && total > length) {
+            return null;
+        }
+        return bounds;
+    }
+
+    private boolean trySendfile(Body body, long start, long end, HttpServletRequest request) {
+        if (body.file() == null || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME_ATTR, body.file().toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START_ATTR, start);
+        request.setAttribute(SENDFILE_END_ATTR, end);
+        return true;
+    }
+
+    private static String contentRange(long[] range, long length) {
+        return "bytes " + range[0] + "-" + range[1] + "/" + length;
+    }
+
+    static void copyRange(Path file, long start, long count, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Ne pas fermer ce canal : il fermerait le flux de la réponse
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long end = start + count;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private interface Body {
+        long length();
+
+        void transferTo(long start, long count, OutputStream out) throws IOException;
+
+        // Fichier local pouvant être confié au sendfile, null sinon
+        Path file();
+    }
+
+    private record FileBody(Path path, long length, boolean sendfile) implements Body {
+        @Override
+        public void transferTo(long start, long count, OutputStream out) throws IOException {
+            copyRange(path, start, count, out);
+        }
+
+        @Override
+        public Path file() {
+            return sendfile ? path : null;
+        }
+    }
+
+    private record StorageBody(PhotoStorage storage, StorageKey key, long length, Path file) implements Body {
+        @Override
+        public void transferTo(long start, long count, OutputStream out) throws IOException {
+            if (file != null) {
+                copyRange(file, start, count, out);
+            } else {
+                storage.stream(key, start, count, out);
+            }
+        }
+    }
+
+    private record BytesBody(byte[] content) implements Body {
+        @Override
+        public long length() {
+            return content.length;
+        }
+
+        @Override
+        public void transferTo(long start, long count, OutputStream out) throws IOException {
+            out.write(content, (int) start, (int) count);
+        }
+
+        @Override
+        public Path file() {
+            return null;
+        }
+    }
+}
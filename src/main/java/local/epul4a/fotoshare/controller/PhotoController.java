@@ -2,61 +2,102 @@ package local.epul4a.fotoshare.controller;
 
 import local.epul4a.fotoshare.dto.AlbumDTO;
 import local.epul4a.fotoshare.dto.CommentDTO;
+import local.epul4a.fotoshare.dto.PhotoCursor;
 import local.epul4a.fotoshare.dto.PhotoDTO;
+import local.epul4a.fotoshare.dto.PhotoImageDTO;
 import local.epul4a.fotoshare.dto.PhotoUploadDTO;
+import local.epul4a.fotoshare.entity.Photo;
 import local.epul4a.fotoshare.entity.User;
 import local.epul4a.fotoshare.service.AlbumService;
 import local.epul4a.fotoshare.service.CommentService;
+import local.epul4a.fotoshare.service.DerivedImageCache;
+import local.epul4a.fotoshare.service.ImageRenderService;
+import local.epul4a.fotoshare.service.ImageUrlSigner;
+import local.epul4a.fotoshare.service.PhotoAccessTracker;
 import local.epul4a.fotoshare.service.PhotoService;
+import local.epul4a.fotoshare.service.PhotoStorage;
 import local.epul4a.fotoshare.service.SecurityService;
+import local.epul4a.fotoshare.service.StorageTieringService;
 import local.epul4a.fotoshare.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.DigestUtils;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
 import java.util.List;
 
 @Controller
 @RequestMapping("/photos")
 public class PhotoController {
 
+    private static final String PUBLIC_IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String PUBLIC_REVALIDATE = "public, no-cache";
+    private static final String PRIVATE_REVALIDATE = "private, no-cache";
+    private static final ClassPathResource PENDING_PLACEHOLDER = new ClassPathResource("static/images/thumbnail-pending.svg");
+    private static final ClassPathResource UNAVAILABLE_PLACEHOLDER = new ClassPathResource("static/images/thumbnail-unavailable.svg");
+
     private final PhotoService photoService;
     private final UserService userService;
     private final SecurityService securityService;
     private final CommentService commentService;
     private final AlbumService albumService;
+    private final ImageResponseWriter imageResponseWriter;
+    private final ImageRenderService imageRenderService;
+    private final PhotoStorage photoStorage;
+    private final PhotoAccessTracker photoAccessTracker;
+    private final StorageTieringService storageTieringService;
+    private final ImageUrlSigner imageUrlSigner;
 
     public PhotoController(PhotoService photoService,
                           UserService userService,
                           SecurityService securityService,
                           CommentService commentService,
-                          AlbumService albumService) {
+                          AlbumService albumService,
+                          ImageResponseWriter imageResponseWriter,
+                          ImageRenderService imageRenderService,
+                          PhotoStorage photoStorage,
+                          PhotoAccessTracker photoAccessTracker,
+                          StorageTieringService storageTieringService,
+                          ImageUrlSigner imageUrlSigner) {
         this.photoService = photoService;
         this.userService = userService;
         this.securityService = securityService;
         this.commentService = commentService;
         this.albumService = albumService;
+        this.imageResponseWriter = imageResponseWriter;
+        this.imageRenderService = imageRenderService;
+        this.photoStorage = photoStorage;
+        this.photoAccessTracker = photoAccessTracker;
+        this.storageTieringService = storageTieringService;
+        this.imageUrlSigner = imageUrlSigner;
     }
 
     @GetMapping
     public String listPhotos(Authentication authentication,
-                             @RequestParam(defaultValue = "0") int page,
+                             @RequestParam(required = false) String cursor,
                              @RequestParam(defaultValue = "12") int size,
                              Model model) {
-        User user = userService.findByUsername(authentication.getName());
-        Page<PhotoDTO> photos = photoService.getAccessiblePhotos(user, PageRequest.of(page, size));
+        User user = userService.getCurrentUser(authentication);
+        Slice<PhotoDTO> photos = photoService.getAccessiblePhotos(user, PhotoCursor.decode(cursor), size);
         model.addAttribute("photos", photos);
+        model.addAttribute("nextCursor", PhotoCursor.next(photos));
         model.addAttribute("pageTitle", "Toutes les photos accessibles");
         model.addAttribute("authenticated", true);
         model.addAttribute("baseUrl", "/photos");
@@ -65,12 +106,13 @@ public class PhotoController {
 
     @GetMapping("/my")
     public String myPhotos(Authentication authentication,
-                           @RequestParam(defaultValue = "0") int page,
+                           @RequestParam(required = false) String cursor,
                            @RequestParam(defaultValue = "12") int size,
                            Model model) {
-        User user = userService.findByUsername(authentication.getName());
-        Page<PhotoDTO> photos = photoService.getPhotosByOwner(user, PageRequest.of(page, size));
+        User user = userService.getCurrentUser(authentication);
+        Slice<PhotoDTO> photos = photoService.getPhotosByOwner(user, PhotoCursor.decode(cursor), size);
         model.addAttribute("photos", photos);
+        model.addAttribute("nextCursor", PhotoCursor.next(photos));
         model.addAttribute("pageTitle", "Mes photos");
         model.addAttribute("authenticated", true);
         model.addAttribute("baseUrl", "/photos/my");
@@ -78,11 +120,12 @@ public class PhotoController {
     }
 
     @GetMapping("/public")
-    public String publicPhotos(@RequestParam(defaultValue = "0") int page,
+    public String publicPhotos(@RequestParam(required = false) String cursor,
                                @RequestParam(defaultValue = "12") int size,
                                Model model) {
-        Page<PhotoDTO> photos = photoService.getPublicPhotos(PageRequest.of(page, size));
+        Slice<PhotoDTO> photos = photoService.getPublicPhotos(PhotoCursor.decode(cursor), size);
         model.addAttribute("photos", photos);
+        model.addAttribute("nextCursor", PhotoCursor.next(photos));
         model.addAttribute("pageTitle", "Photos publiques");
         model.addAttribute("authenticated", false);
         model.addAttribute("baseUrl", "/photos/public");
@@ -91,12 +134,13 @@ public class PhotoController {
 
     @GetMapping("/shared")
     public String sharedPhotos(Authentication authentication,
-                              @RequestParam(defaultValue = "0") int page,
+                              @RequestParam(required = false) String cursor,
                               @RequestParam(defaultValue = "12") int size,
                               Model model) {
-        User user = userService.findByUsername(authentication.getName());
-        Page<PhotoDTO> photos = photoService.getSharedWithUser(user, PageRequest.of(page, size));
+        User user = userService.getCurrentUser(authentication);
+        Slice<PhotoDTO> photos = photoService.getSharedWithUser(user, PhotoCursor.decode(cursor), size);
         model.addAttribute("photos", photos);
+        model.addAttribute("nextCursor", PhotoCursor.next(photos));
         model.addAttribute("pageTitle", "Photos Partagées avec Moi");
         model.addAttribute("authenticated", true);
         model.addAttribute("baseUrl", "/photos/shared");
@@ -123,7 +167,7 @@ public class PhotoController {
         }
 
         try {
-            User user = userService.findByUsername(authentication.getName());
+            User user = userService.getCurrentUser(authentication);
 
             photoService.uploadPhoto(dto, user);
             return "redirect:/photos/my?uploaded=true";
@@ -147,7 +191,7 @@ public class PhotoController {
         final User currentUser;
 
         if (authentication != null) {
-            currentUser = userService.findByUsername(authentication.getName());
+            currentUser = userService.getCurrentUser(authentication);
             userAlbums = albumService.getAlbumsWithoutPhoto(currentUser, id);
             // Ne montrer que les albums dont l'user connecté est propriétaire
             List<AlbumDTO> allAlbumsContainingPhoto = albumService.getAlbumsContainingPhoto(id);
@@ -170,40 +214,135 @@ public class PhotoController {
     }
 
     @GetMapping("/{id}/image")
-    public ResponseEntity<byte[]> getImage(@PathVariable Long id, Authentication authentication) {
-        try {
-            if (!securityService.canAccessPhoto(authentication, id)) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-            }
+    public void getImage(@PathVariable Long id,
+                         @RequestParam(name = "v", required = false) String version,
+                         @RequestParam(name = "exp", required = false) Long expiresAt,
+                         @RequestParam(name = "sig", required = false) String signature,
+                         Authentication authentication,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        PhotoImageDTO image = imageView(id, "image", version, expiresAt, signature, authentication);
+        if (image == null || !image.isAccessible()) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
 
-            byte[] imageBytes = photoService.getPhotoFile(id);
-            PhotoDTO photo = photoService.getPhotoDTO(id);
+        writeOriginal(image, version, request, response);
+    }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(photo.getContentType()));
+    @GetMapping("/{id}/rendition/{width}")
+    public void getRendition(@PathVariable Long id,
+                             @PathVariable int width,
+                             @RequestParam(name = "v", required = false) String version,
+                             @RequestParam(name = "exp", required = false) Long expiresAt,
+                             @RequestParam(name = "sig", required = false) String signature,
+                             Authentication authentication,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        PhotoImageDTO image = imageView(id, "rendition/" + width, version, expiresAt, signature, authentication);
+        if (image == null || !image.isAccessible()) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
 
-            return new ResponseEntity<>(imageBytes, headers, HttpStatus.OK);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        Integer renditionWidth = photoService.resolveRenditionWidth(image, width);
+        if (renditionWidth == null) {
+            writeOriginal(image, version, request, response);
+            return;
         }
+
+        photoAccessTracker.record(id, false);
+        String etag = etag(image, "rendition:" + renditionWidth + ":" + image.getStorageFilename());
+        long lastModified = lastModified(image);
+        if (imageResponseWriter.checkNotModified(etag, lastModified, cacheControl(image, version), request, response)) {
+            return;
+        }
+        imageResponseWriter.write(photoStorage, photoService.getRenditionKey(image, renditionWidth), "image/jpeg", etag, lastModified, request, response);
     }
 
-    @GetMapping("/{id}/thumbnail")
-    public ResponseEntity<byte[]> getThumbnail(@PathVariable Long id, Authentication authentication) {
+    @GetMapping("/{id}/render")
+    public void renderImage(@PathVariable Long id,
+                            @RequestParam(name = "w", required = false) Integer width,
+                            @RequestParam(name = "h", required = false) Integer height,
+                            @RequestParam(required = false) String fit,
+                            @RequestParam(name = "fmt", required = false) String format,
+                            @RequestParam(name = "v", required = false) String version,
+                            Authentication authentication,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        PhotoImageDTO image = photoService.getImageView(id, authentication);
+        if (image == null || !image.isAccessible()) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        ImageRenderService.RenderOptions options;
         try {
-            if (!securityService.canAccessPhoto(authentication, id)) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-            }
+            options = imageRenderService.parseOptions(width, height, fit, format);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
 
-            PhotoDTO photo = photoService.getPhotoDTO(id);
-            byte[] imageBytes = photoService.getThumbnailFile(id);
+        photoAccessTracker.record(id, false);
+        String etag = etag(image, "render:" + options.variant() + ":" + image.getStorageFilename());
+        long lastModified = lastModified(image);
+        if (imageResponseWriter.checkNotModified(etag, lastModified, cacheControl(image, version), request, response)) {
+            return;
+        }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(photo.getContentType()));
+        DerivedImageCache.Lease rendered;
+        try {
+            rendered = imageRenderService.render(image, options);
+        } catch (NoSuchFileException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        // Le fichier peut être évincé dès sa libération : il est recopié pendant la réservation
+        try (rendered) {
+            imageResponseWriter.writeWithoutSendfile(rendered.path(), options.contentType(), etag, lastModified, request, response);
+        }
+    }
 
-            return new ResponseEntity<>(imageBytes, headers, HttpStatus.OK);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    @GetMapping("/{id}/thumbnail")
+    public void getThumbnail(@PathVariable Long id,
+                             @RequestParam(name = "v", required = false) String version,
+                             @RequestParam(name = "exp", required = false) Long expiresAt,
+                             @RequestParam(name = "sig", required = false) String signature,
+                             Authentication authentication,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        PhotoImageDTO image = imageView(id, "thumbnail", version, expiresAt, signature, authentication);
+        if (image == null || !image.isAccessible()) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        if (image.getProcessingStatus() == Photo.ProcessingStatus.PENDING) {
+            writePlaceholder(PENDING_PLACEHOLDER, response);
+            return;
+        }
+        if (image.getProcessingStatus() == Photo.ProcessingStatus.FAILED) {
+            writePlaceholder(UNAVAILABLE_PLACEHOLDER, response);
+            return;
+        }
+
+        photoAccessTracker.record(id, false);
+        String etag = etag(image, "thumbnail:" + image.getThumbnailFilename());
+        long lastModified = lastModified(image);
+        if (imageResponseWriter.checkNotModified(etag, lastModified, cacheControl(image, version), request, response)) {
+            return;
+        }
+
+        // Les miniatures sont toujours générées en JPEG ; seule une photo sans miniature enregistrée sert son original
+        String contentType = image.getThumbnailFilename() != null && !image.getThumbnailFilename().equals(image.getStorageFilename())
+                ? "image/jpeg" : image.getContentType();
+        byte[] cached = photoService.getThumbnailBytes(image, etag);
+        if (cached != null) {
+            imageResponseWriter.write(cached, contentType, etag, lastModified, request, response);
+            return;
+        }
+        if (!imageResponseWriter.writeIfPresent(photoStorage, photoService.getThumbnailKey(image), contentType,
+                etag, lastModified, request, response)) {
+            // Miniature enregistrée mais absente du stockage : les en-têtes de cache posés plus haut sont retirés
+            response.reset();
+            writePlaceholder(UNAVAILABLE_PLACEHOLDER, response);
         }
     }
 
@@ -233,7 +372,7 @@ public class PhotoController {
         }
 
         try {
-            User user = userService.findByUsername(authentication.getName());
+            User user = userService.getCurrentUser(authentication);
             photoService.updatePhoto(id, dto, user);
             return "redirect:/photos/" + id + "?updated=true";
         } catch (Exception e) {
@@ -246,8 +385,79 @@ public class PhotoController {
     @PostMapping("/{id}/delete")
     @PreAuthorize("@securityService.canDeletePhoto(authentication, #id)")
     public String deletePhoto(@PathVariable Long id, Authentication authentication) {
-        User user = userService.findByUsername(authentication.getName());
+        User user = userService.getCurrentUser(authentication);
         photoService.deletePhoto(id, user);
         return "redirect:/photos/my?deleted=true";
     }
+
+    /**
+     * URL versionnée d'une photo publique, ou URL signée valide : métadonnées sans vérification d'accès
+     * (souvent sans requête), la signature étant vérifiée avec la version des droits de la photo.
+     * Sinon, ou si l'image ou ses partages ont changé depuis l'émission, vérification complète en base.
+     */
+    private PhotoImageDTO imageView(Long id, String variant, String version, Long expiresAt, String signature,
+                                    Authentication authentication) {
+        if (version != null) {
+            PhotoImageDTO image = photoService.getSignedImageView(id, version);
+            // Une visibilité modifiée change la version : la vue d'une version publique reste publique
+            if (image != null && (image.getVisibility() == Photo.Visibility.PUBLIC
+                    || signature != null && expiresAt != null && imageUrlSigner.verify(id, variant, version,
+                    image.getAclVersion(), expiresAt, signature, username(authentication), System.currentTimeMillis() / 1000))) {
+                return image;
+            }
+        }
+        return photoService.getImageView(id, authentication);
+    }
+
+    private static String username(Authentication authentication) {
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    private void writeOriginal(PhotoImageDTO image, String version,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String etag = etag(image, "image:" + image.getStorageFilename());
+        long lastModified = lastModified(image);
+        if (imageResponseWriter.checkNotModified(etag, lastModified, cacheControl(image, version), request, response)) {
+            photoAccessTracker.record(image.getId(), false);
+            return;
+        }
+        // Seule une lecture effective de l'original le garde sur le volume (ou l'y fait remonter)
+        photoAccessTracker.record(image.getId(), true);
+        if (image.getStorageTier() == Photo.StorageTier.COLD) {
+            storageTieringService.promote(image);
+        }
+        imageResponseWriter.write(photoStorage, photoService.getPhotoKey(image), image.getContentType(), etag, lastModified, request, response);
+    }
+
+    // Image de remplacement tant qu'il n'y a pas de vraie miniature, jamais mise en cache
+    private void writePlaceholder(ClassPathResource placeholder, HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        response.setContentType("image/svg+xml");
+        try (InputStream in = placeholder.getInputStream()) {
+            in.transferTo(response.getOutputStream());
+        }
+    }
+
+    private String etag(PhotoImageDTO image, String variant) {
+        String source = variant + ":" + image.getFileSize() + ":" + image.getImageVersion();
+        return "\"" + DigestUtils.md5DigestAsHex(source.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    private long lastModified(PhotoImageDTO image) {
+        return image.getImageUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private String cacheControl(PhotoImageDTO image, String requestedVersion) {
+        if (image.getVisibility() != Photo.Visibility.PUBLIC) {
+            return PRIVATE_REVALIDATE;
+        }
+        // Une URL versionnée (?v=) change dès que la visibilité change : son contenu est figé
+        if (requestedVersion != null && requestedVersion.equals(image.getImageVersion())) {
+            return PUBLIC_IMMUTABLE;
+        }
+        return PUBLIC_REVALIDATE;
+    }
 }
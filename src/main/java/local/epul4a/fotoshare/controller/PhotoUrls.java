@@ -0,0 +1,103 @@
+package local.epul4a.fotoshare.controller;
+
+import jakarta.servlet.ServletContext;
+import local.epul4a.fotoshare.dto.PhotoDTO;
+import local.epul4a.fotoshare.service.ImageUrlSigner;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Construit les URL versionnées des images pour les templates (th:srcset="${@photoUrls.srcset(photo)}").
+ * Les URL d'une photo publique ne dépendent que de sa version : stables, elles restent dans le cache
+ * du navigateur. Celles d'une photo non publique sont signées pour l'utilisateur connecté
+ * (ImageUrlSigner) : la page vient de vérifier l'accès à la photo, l'image est ensuite servie sans
+ * refaire cette vérification. Sans utilisateur connecté, elles ne sont pas signées.
+ */
+@Component("photoUrls")
+public class PhotoUrls {
+
+    // Les grilles affichent les miniatures sur environ 300 px CSS
+    private static final int GRID_DISPLAY_WIDTH = 300;
+
+    private final String contextPath;
+    private final ImageUrlSigner imageUrlSigner;
+
+    public PhotoUrls(ServletContext servletContext, ImageUrlSigner imageUrlSigner) {
+        this.contextPath = servletContext.getContextPath();
+        this.imageUrlSigner = imageUrlSigner;
+    }
+
+    public String image(PhotoDTO photo) {
+        return url(photo, "image");
+    }
+
+    public String thumbnail(PhotoDTO photo) {
+        return url(photo, "thumbnail");
+    }
+
+    public String rendition(PhotoDTO photo, int width) {
+        return url(photo, "rendition/" + width);
+    }
+
+    /**
+     * srcset en largeurs ("url 640w, ...") avec toutes les déclinaisons, plus l'original
+     * si ses dimensions sont connues. Null si la photo n'a pas encore de déclinaisons.
+     */
+    public String srcset(PhotoDTO photo) {
+        if (photo.getRenditionWidths().isEmpty()) {
+            return null;
+        }
+        List<String> candidates = new ArrayList<>();
+        for (int width : photo.getRenditionWidths()) {
+            candidates.add(rendition(photo, width) + " " + width + "w");
+        }
+        if (photo.getWidth() != null) {
+            candidates.add(image(photo) + " " + photo.getWidth() + "w");
+        }
+        return String.join(", ", candidates);
+    }
+
+    /**
+     * srcset en densités pour les grilles : la miniature en 1x (servie depuis le cache mémoire),
+     * une déclinaison deux fois plus large pour les écrans haute densité.
+     */
+    public String gridSrcset(PhotoDTO photo) {
+        for (int width : photo.getRenditionWidths()) {
+            if (width >= 2 * GRID_DISPLAY_WIDTH) {
+                return thumbnail(photo) + " 1x, " + rendition(photo, width) + " 2x";
+            }
+        }
+        return null;
+    }
+
+    private String url(PhotoDTO photo, String variant) {
+        String url = contextPath + "/photos/" + photo.getId() + "/" + variant
+                + (photo.getImageVersion() != null ? "?v=" + photo.getImageVersion() : "");
+        if ("PUBLIC".equals(photo.getVisibility())) {
+            return url;
+        }
+        String username = currentUsername();
+        if (username == null) {
+            // Jamais d'URL au porteur pour une photo non publique : l'accès sera vérifié en base
+            return url;
+        }
+        long expiresAt = imageUrlSigner.expiresAt(System.currentTimeMillis() / 1000);
+        String signature = imageUrlSigner.sign(photo.getId(), variant, photo.getImageVersion(),
+                photo.getAclVersion(), expiresAt, username);
+        return url + (photo.getImageVersion() != null ? "&" : "?") + "exp=" + expiresAt + "&sig=" + signature;
+    }
+
+    private static String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+}
@@ -32,7 +32,7 @@ public class ShareController {
     public String listShares(@PathVariable Long photoId,
                              Authentication authentication,
                              Model model) {
-        User user = userService.findByUsername(authentication.getName());
+        User user = userService.getCurrentUser(authentication);
         List<ShareDTO> shares = shareService.getPhotoShares(photoId, user);
 
         model.addAttribute("shares", shares);
@@ -48,7 +48,7 @@ public class ShareController {
                              Authentication authentication,
                              RedirectAttributes redirectAttributes) {
         try {
-            User owner = userService.findByUsername(authentication.getName());
+            User owner = userService.getCurrentUser(authentication);
 
 
             User targetUser;
@@ -81,7 +81,7 @@ public class ShareController {
                                    Authentication authentication,
                                    RedirectAttributes redirectAttributes) {
         try {
-            User owner = userService.findByUsername(authentication.getName());
+            User owner = userService.getCurrentUser(authentication);
             shareService.updatePermission(partageId, Share.PermissionLevel.valueOf(permissionLevel), owner);
             redirectAttributes.addFlashAttribute("success", "Permissions mises à jour");
             return "redirect:/photos/" + photoId + "/shares?updated=true";
@@ -98,7 +98,7 @@ public class ShareController {
                                Authentication authentication,
                                RedirectAttributes redirectAttributes) {
         try {
-            User owner = userService.findByUsername(authentication.getName());
+            User owner = userService.getCurrentUser(authentication);
             shareService.revokeAccess(partageId, owner);
             redirectAttributes.addFlashAttribute("success", "Accès révoqué");
             return "redirect:/photos/" + photoId + "/shares?revoked=true";
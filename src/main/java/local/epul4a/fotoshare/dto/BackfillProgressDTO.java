@@ -0,0 +1,36 @@
+package local.epul4a.fotoshare.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Avancement de la dernière régénération des déclinaisons, pour le tableau de bord admin.
+ */
+@Getter
+@Setter
+public class BackfillProgressDTO {
+    private Long jobId;
+    private String status;
+    private long totalCount;
+    private long processedCount;
+    private long failedCount;
+    private Long lastPhotoId;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private double photosPerSecond;
+    // Temps restant estimé en secondes, null si inconnu
+    private Long etaSeconds;
+
+    public boolean isRunning() {
+        return "RUNNING".equals(status);
+    }
+
+    public int getPercent() {
+        if (totalCount == 0) {
+            return isRunning() ? 0 : 100;
+        }
+        return (int) Math.min(100, processedCount * 100 / totalCount);
+    }
+}
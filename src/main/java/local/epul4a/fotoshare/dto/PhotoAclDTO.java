@@ -0,0 +1,19 @@
+package local.epul4a.fotoshare.dto;
+
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.entity.Share;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Droits d'une photo pour un utilisateur : propriétaire, visibilité et niveau de partage
+ * (null sans partage), chargés pour une page entière en une seule requête.
+ */
+@Getter
+@AllArgsConstructor
+public class PhotoAclDTO {
+    private Long photoId;
+    private Long ownerId;
+    private Photo.Visibility visibility;
+    private Share.PermissionLevel permissionLevel;
+}
@@ -0,0 +1,54 @@
+package local.epul4a.fotoshare.dto;
+
+import org.springframework.data.domain.Slice;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Position dans un fil de photos parcouru du plus récent au plus ancien : la page suivante commence
+ * après la photo (createdAt, id). Transmise dans l'URL sous forme d'un jeton opaque.
+ */
+public record PhotoCursor(LocalDateTime createdAt, Long id) {
+
+    // Avant toutes les photos : première page, lue sans condition sur la date (l'identifiant reste un majorant
+    // valable pour le fil ordonné par identifiant)
+    public static final PhotoCursor FIRST = new PhotoCursor(null, Long.MAX_VALUE);
+
+    public boolean isFirst() {
+        return createdAt == null;
+    }
+
+    public String encode() {
+        String value = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Jeton reçu dans l'URL : absent ou illisible, le fil reprend à la première page.
+     */
+    public static PhotoCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return FIRST;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = value.indexOf('|');
+            return new PhotoCursor(LocalDateTime.parse(value.substring(0, separator)), Long.parseLong(value.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            return FIRST;
+        }
+    }
+
+    // Jeton de la page suivante, null s'il n'y en a pas
+    public static String next(Slice<PhotoDTO> photos) {
+        List<PhotoDTO> content = photos.getContent();
+        if (!photos.hasNext() || content.isEmpty()) {
+            return null;
+        }
+        PhotoDTO last = content.get(content.size() - 1);
+        return new PhotoCursor(last.getCreatedAt(), last.getId()).encode();
+    }
+}
@@ -6,6 +6,8 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @Getter
 @Setter
@@ -19,6 +21,14 @@ public class PhotoDTO {
     private String storageFilename;
     private String thumbnailFilename;
     private String contentType;
+    private Long fileSize;
+    private LocalDateTime imageUpdatedAt;
+    private String imageVersion;
+    private long aclVersion;
+    private String processingStatus;
+    private Integer width;
+    private Integer height;
+    private List<Integer> renditionWidths = new ArrayList<>();
     private String visibility;
     private String ownerUsername;
     private Long ownerId;
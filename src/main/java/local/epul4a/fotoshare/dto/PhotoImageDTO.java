@@ -0,0 +1,57 @@
+package local.epul4a.fotoshare.dto;
+
+import local.epul4a.fotoshare.entity.Photo;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection utilisée pour servir une image : tout ce qu'il faut pour autoriser
+ * la requête et envoyer le fichier, chargé en une seule requête SQL.
+ */
+@Getter
+@Setter
+public class PhotoImageDTO {
+    private Long id;
+    private String storageFilename;
+    private String storageVolume;
+    private Photo.StorageTier storageTier;
+    private String thumbnailFilename;
+    private String contentType;
+    private Photo.Visibility visibility;
+    private Long fileSize;
+    private LocalDateTime imageUpdatedAt;
+    private Photo.ProcessingStatus processingStatus;
+    private String renditionWidths;
+    private long aclVersion;
+    private boolean accessible;
+    private String imageVersion;
+
+    public PhotoImageDTO(Long id, String storageFilename, String storageVolume, Photo.StorageTier storageTier,
+                         String thumbnailFilename, String contentType, Photo.Visibility visibility, Long fileSize,
+                         LocalDateTime imageUpdatedAt, Photo.ProcessingStatus processingStatus, String renditionWidths,
+                         Boolean accessible) {
+        this(id, storageFilename, storageVolume, storageTier, thumbnailFilename, contentType, visibility, fileSize,
+                imageUpdatedAt, processingStatus, renditionWidths, 0L, accessible);
+    }
+
+    public PhotoImageDTO(Long id, String storageFilename, String storageVolume, Photo.StorageTier storageTier,
+                         String thumbnailFilename, String contentType, Photo.Visibility visibility, Long fileSize,
+                         LocalDateTime imageUpdatedAt, Photo.ProcessingStatus processingStatus, String renditionWidths,
+                         Long aclVersion, Boolean accessible) {
+        this.id = id;
+        this.storageFilename = storageFilename;
+        this.storageVolume = storageVolume;
+        this.storageTier = storageTier;
+        this.thumbnailFilename = thumbnailFilename;
+        this.contentType = contentType;
+        this.visibility = visibility;
+        this.fileSize = fileSize;
+        this.imageUpdatedAt = imageUpdatedAt;
+        this.processingStatus = processingStatus;
+        this.renditionWidths = renditionWidths;
+        this.aclVersion = aclVersion != null ? aclVersion : 0L;
+        this.accessible = Boolean.TRUE.equals(accessible);
+    }
+}
@@ -31,19 +31,67 @@ public class Photo {
     @Column(name = "original_filename")
     private String originalFilename;
 
-    @Column(name = "storage_filename", nullable = false, unique = true)
+    // Partagé par toutes les photos au contenu identique (voir StoredFile)
+    @Column(name = "storage_filename", nullable = false)
     private String storageFilename;
 
+    // Empreinte SHA-256 de l'original, null pour les photos antérieures au stockage par contenu
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Volume de stockage de l'original et de ses déclinaisons, null pour le volume par défaut
+    @Column(name = "storage_volume", length = 50)
+    private String storageVolume;
+
+    // Original déplacé vers le stockage froid faute de lecture récente (les déclinaisons restent sur le volume)
+    @Enumerated(EnumType.STRING)
+    @Column(name = "storage_tier", nullable = false, columnDefinition = "VARCHAR(10) DEFAULT 'HOT'")
+    private StorageTier storageTier = StorageTier.HOT;
+
+    // Requêtes sur les images de la photo (toutes tailles), agrégées par PhotoAccessTracker
+    @Column(name = "access_count", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long accessCount;
+
+    // Dernière lecture de l'original, qui décide du passage au stockage froid
+    @Column(name = "last_accessed_at")
+    private LocalDateTime lastAccessedAt;
+
     @Column(name = "thumbnail_filename")
     private String thumbnailFilename;
 
     @Column(name = "content_type", nullable = false, length = 50)
     private String contentType;
 
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    // Dimensions de l'original, lues à la génération des déclinaisons
+    private Integer width;
+
+    private Integer height;
+
+    // Largeurs des déclinaisons générées, séparées par des virgules (ex : "160,320,640")
+    @Column(name = "rendition_widths", length = 100)
+    private String renditionWidths;
+
+    // Change à chaque modification qui doit invalider les caches HTTP de l'image (ETag, Last-Modified)
+    @Column(name = "image_updated_at")
+    private LocalDateTime imageUpdatedAt;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false, columnDefinition = "VARCHAR(20) DEFAULT 'PRIVATE'")
     private Visibility visibility = Visibility.PRIVATE;
 
+    // Change à chaque partage ajouté ou retiré : couvert par la signature des URL d'images (ImageUrlSigner).
+    // Modifié uniquement par PhotoRepository.incrementAclVersion, jamais réécrit depuis une entité chargée avant
+    @Column(name = "acl_version", nullable = false, updatable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long aclVersion;
+
+    // État de la génération des déclinaisons (miniature) faite en arrière-plan après l'upload
+    @Enumerated(EnumType.STRING)
+    @Column(name = "processing_status", nullable = false, columnDefinition = "VARCHAR(20) DEFAULT 'READY'")
+    private ProcessingStatus processingStatus = ProcessingStatus.READY;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id", nullable = false)
     private User owner;
@@ -64,9 +112,18 @@ public class Photo {
         PRIVATE, PUBLIC
     }
 
+    public enum ProcessingStatus {
+        PENDING, READY, FAILED
+    }
+
+    public enum StorageTier {
+        HOT, COLD
+    }
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
+        imageUpdatedAt = createdAt;
     }
 }
 
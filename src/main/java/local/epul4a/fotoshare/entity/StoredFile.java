@@ -0,0 +1,43 @@
+package local.epul4a.fotoshare.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Original stocké sur le disque, identifié par l'empreinte SHA-256 de son contenu.
+ * Plusieurs photos peuvent partager le même fichier (et ses déclinaisons) : refCount
+ * compte les lignes Photo qui y font référence.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "stored_file")
+public class StoredFile {
+
+    @Id
+    @Column(length = 64)
+    private String sha256;
+
+    @Column(name = "storage_filename", nullable = false)
+    private String storageFilename;
+
+    @Column(name = "file_size", nullable = false)
+    private Long fileSize;
+
+    // Volume de stockage, null pour le volume par défaut
+    @Column(length = 50)
+    private String volume;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
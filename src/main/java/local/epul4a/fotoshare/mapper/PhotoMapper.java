@@ -2,8 +2,12 @@ package local.epul4a.fotoshare.mapper;
 
 import local.epul4a.fotoshare.dto.PhotoDTO;
 import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.service.RenditionService;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
 @Component
 public class PhotoMapper {
 
@@ -17,11 +21,24 @@ public class PhotoMapper {
         dto.setStorageFilename(photo.getStorageFilename());
         dto.setThumbnailFilename(photo.getThumbnailFilename());
         dto.setContentType(photo.getContentType());
+        dto.setFileSize(photo.getFileSize());
+        dto.setImageUpdatedAt(photo.getImageUpdatedAt() != null ? photo.getImageUpdatedAt() : photo.getCreatedAt());
+        dto.setImageVersion(imageVersion(dto.getImageUpdatedAt()));
+        dto.setAclVersion(photo.getAclVersion());
+        dto.setProcessingStatus(photo.getProcessingStatus().name());
+        dto.setWidth(photo.getWidth());
+        dto.setHeight(photo.getHeight());
+        dto.setRenditionWidths(RenditionService.parseWidths(photo.getRenditionWidths()));
         dto.setVisibility(photo.getVisibility().name());
         dto.setOwnerUsername(photo.getOwner().getUsername());
         dto.setOwnerId(photo.getOwner().getId());
         dto.setCreatedAt(photo.getCreatedAt());
         return dto;
     }
+
+    public String imageVersion(LocalDateTime imageUpdatedAt) {
+        if (imageUpdatedAt == null) return null;
+        return Long.toString(imageUpdatedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), 36);
+    }
 }
 
@@ -1,23 +1,175 @@
 package local.epul4a.fotoshare.repository;
 
+import local.epul4a.fotoshare.dto.PhotoAclDTO;
+import local.epul4a.fotoshare.dto.PhotoImageDTO;
 import local.epul4a.fotoshare.entity.Photo;
 import local.epul4a.fotoshare.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PhotoRepository extends JpaRepository<Photo, Long> {
-    Page<Photo> findByOwner(User owner, Pageable pageable);
-    Page<Photo> findByVisibility(Photo.Visibility visibility, Pageable pageable);
+    // Fils paginés par curseur, du plus récent au plus ancien : la page reprend après (createdAt, id) sans OFFSET,
+    // le Slice ne lit qu'une ligne de plus au lieu d'un COUNT, et le propriétaire est chargé avec la page
+    @Query("SELECT p FROM Photo p JOIN FETCH p.owner WHERE p.owner = :owner " +
+            "AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id)) " +
+            "ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<Photo> findByOwnerBefore(@Param("owner") User owner, @Param("createdAt") LocalDateTime createdAt,
+                                   @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT p FROM Photo p JOIN FETCH p.owner WHERE p.visibility = :visibility " +
+            "AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id)) " +
+            "ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<Photo> findByVisibilityBefore(@Param("visibility") Photo.Visibility visibility, @Param("createdAt") LocalDateTime createdAt,
+                                        @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT p FROM Share pa JOIN pa.photo p JOIN FETCH p.owner WHERE pa.user = :user " +
+            "AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id)) " +
+            "ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<Photo> findSharedWithUserBefore(@Param("user") User user, @Param("createdAt") LocalDateTime createdAt,
+                                          @Param("id") Long id, Pageable pageable);
+
+    // Premières pages, sans condition de curseur : aucune date sentinelle hors de la plage d'une colonne TIMESTAMP
+    @Query("SELECT p FROM Photo p JOIN FETCH p.owner WHERE p.owner = :owner ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<Photo> findLatestByOwner(@Param("owner") User owner, Pageable pageable);
+
+    @Query("SELECT p FROM Photo p JOIN FETCH p.owner WHERE p.visibility = :visibility ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<Photo> findLatestByVisibility(@Param("visibility") Photo.Visibility visibility, Pageable pageable);
+
+    @Query("SELECT p FROM Share pa JOIN pa.photo p JOIN FETCH p.owner WHERE pa.user = :user ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<Photo> findLatestSharedWithUser(@Param("user") User user, Pageable pageable);
+
+    // Fil complet, ordonné par identifiant comme PhotoFeedIndex (l'identifiant suit l'ordre d'insertion)
+    @Query("SELECT p FROM Photo p JOIN FETCH p.owner WHERE p.id < :id " +
+            "AND (p.visibility = 'PUBLIC' OR p.owner = :user OR EXISTS (SELECT pa FROM Share pa WHERE pa.photo = p AND pa.user = :user)) " +
+            "ORDER BY p.id DESC")
+    Slice<Photo> findAccessiblePhotosBefore(@Param("user") User user, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT p FROM Photo p JOIN FETCH p.owner WHERE p.id IN :ids")
+    List<Photo> findWithOwnerByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Autorisation + métadonnées d'envoi en une requête (photo publique, propriétaire, admin ou partage)
+    @Query("SELECT new local.epul4a.fotoshare.dto.PhotoImageDTO(p.id, p.storageFilename, p.storageVolume, p.storageTier, " +
+            "p.thumbnailFilename, p.contentType, p.visibility, p.fileSize, COALESCE(p.imageUpdatedAt, p.createdAt), p.processingStatus, p.renditionWidths, " +
+            "p.aclVersion, CASE WHEN p.visibility = 'PUBLIC' OR o.username = :username " +
+            "OR EXISTS (SELECT u FROM User u WHERE u.username = :username AND u.role = 'ADMIN') " +
+            "OR EXISTS (SELECT pa FROM Share pa WHERE pa.photo = p AND pa.user.username = :username) " +
+            "THEN true ELSE false END) " +
+            "FROM Photo p JOIN p.owner o WHERE p.id = :photoId")
+    Optional<PhotoImageDTO> findImageView(@Param("photoId") Long photoId, @Param("username") String username);
+
+    // Droits de toute une page de photos : une ligne par photo existante, partage de l'utilisateur en jointure externe
+    @Query("SELECT new local.epul4a.fotoshare.dto.PhotoAclDTO(p.id, o.id, p.visibility, s.permissionLevel) " +
+            "FROM Photo p JOIN p.owner o LEFT JOIN Share s ON s.photo = p AND s.user.id = :userId " +
+            "WHERE p.id IN :photoIds")
+    List<PhotoAclDTO> findAcls(@Param("photoIds") Collection<Long> photoIds, @Param("userId") Long userId);
+
+    // Chargement de PhotoFeedIndex
+    @Query("SELECT p.id FROM Photo p WHERE p.visibility = :visibility")
+    List<Long> findIdsByVisibility(@Param("visibility") Photo.Visibility visibility);
+
+    @Query("SELECT p.id FROM Photo p WHERE p.owner.id = :ownerId")
+    List<Long> findIdsByOwnerId(@Param("ownerId") Long ownerId);
+
+    @Query("SELECT p.id FROM Photo p WHERE p.processingStatus = :status")
+    List<Long> findIdsByProcessingStatus(@Param("status") Photo.ProcessingStatus status);
+
+    // Photos partageant le même original (stockage par contenu)
+    Optional<Photo> findFirstByStorageFilenameAndProcessingStatus(String storageFilename, Photo.ProcessingStatus processingStatus);
+
+    boolean existsByStorageFilename(String storageFilename);
+
+    boolean existsByStorageFilenameAndProcessingStatusAndIdLessThan(String storageFilename,
+                                                                    Photo.ProcessingStatus processingStatus, Long id);
+
+    Optional<Photo> findFirstByStorageFilenameAndProcessingStatusAndIdNotOrderById(String storageFilename,
+                                                                               Photo.ProcessingStatus processingStatus, Long id);
+
+    // Parcours par id croissant à partir d'un point de reprise (pagination par clé, sans OFFSET)
+    @Query("SELECT p.id FROM Photo p WHERE p.id > :afterId ORDER BY p.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Originaux d'un volume (vidage), par nom croissant à partir d'un point de reprise ; les photos
+    // en cours de traitement sont laissées pour un passage ultérieur
+    @Query("SELECT DISTINCT p.storageFilename FROM Photo p WHERE COALESCE(p.storageVolume, :defaultVolume) = :volume " +
+            "AND p.processingStatus <> 'PENDING' AND p.storageFilename > :after ORDER BY p.storageFilename")
+    List<String> findStorageFilenamesOnVolume(@Param("volume") String volume, @Param("defaultVolume") String defaultVolume,
+                                              @Param("after") String after, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Photo p SET p.storageVolume = :volume WHERE p.storageFilename = :storageFilename")
+    int updateStorageVolume(@Param("storageFilename") String storageFilename, @Param("volume") String volume);
+
+    Optional<Photo> findFirstByStorageFilename(String storageFilename);
+
+    // Originaux dont aucune photo n'a été lue depuis cutoff, par nom croissant à partir d'un point de reprise
+    @Query("SELECT p.storageFilename FROM Photo p WHERE p.storageTier = 'HOT' AND p.processingStatus <> 'PENDING' " +
+            "AND p.storageFilename > :after GROUP BY p.storageFilename " +
+            "HAVING MAX(COALESCE(p.lastAccessedAt, p.createdAt)) < :cutoff ORDER BY p.storageFilename")
+    List<String> findColdCandidates(@Param("cutoff") LocalDateTime cutoff, @Param("after") String after, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Photo p SET p.storageTier = :tier WHERE p.storageFilename = :storageFilename")
+    int updateStorageTier(@Param("storageFilename") String storageFilename, @Param("tier") Photo.StorageTier tier);
+
+    long countByStorageTier(Photo.StorageTier storageTier);
+
+    // Photos traitées dont la miniature manque, a échoué ou pointe encore vers l'original
+    @Query("SELECT p FROM Photo p WHERE p.processingStatus <> 'PENDING' AND (p.processingStatus = 'FAILED' " +
+            "OR p.thumbnailFilename IS NULL OR p.thumbnailFilename = p.storageFilename)")
+    Page<Photo> findWithoutThumbnail(Pageable pageable);
+
+    @Query("SELECT p.id FROM Photo p WHERE p.processingStatus <> 'PENDING' AND (p.processingStatus = 'FAILED' " +
+            "OR p.thumbnailFilename IS NULL OR p.thumbnailFilename = p.storageFilename)")
+    List<Long> findIdsWithoutThumbnail();
+
+    // Incrément en base : deux partages modifiés en même temps donnent bien deux versions
+    @Modifying
+    @Query("UPDATE Photo p SET p.aclVersion = p.aclVersion + 1 WHERE p.id = :photoId")
+    int incrementAclVersion(@Param("photoId") Long photoId);
 
-    @Query("SELECT p FROM Photo p WHERE p.visibility = 'PUBLIC' OR p.owner = :user OR EXISTS (SELECT pa FROM Share pa WHERE pa.photo = p AND pa.user = :user)")
-    Page<Photo> findAccessiblePhotos(@Param("user") User user, Pageable pageable);
+    // Mise à jour ciblée : sans effet si la photo a été supprimée pendant le traitement
+    @Modifying
+    @Transactional
+    @Query("UPDATE Photo p SET p.thumbnailFilename = :thumbnailFilename, p.renditionWidths = :renditionWidths, " +
+            "p.width = :width, p.height = :height, p.processingStatus = :status, " +
+            "p.imageUpdatedAt = :imageUpdatedAt WHERE p.id = :photoId")
+    int updateProcessingResult(@Param("photoId") Long photoId,
+                               @Param("thumbnailFilename") String thumbnailFilename,
+                               @Param("renditionWidths") String renditionWidths,
+                               @Param("width") Integer width,
+                               @Param("height") Integer height,
+                               @Param("status") Photo.ProcessingStatus status,
+                               @Param("imageUpdatedAt") LocalDateTime imageUpdatedAt);
 
-    @Query("SELECT p FROM Photo p INNER JOIN Share pa ON pa.photo = p WHERE pa.user = :user")
-    Page<Photo> findSharedWithUser(@Param("user") User user, Pageable pageable);
+    // Doublons envoyés pendant le traitement d'une photo au même contenu : ils reprennent son résultat
+    @Modifying
+    @Transactional
+    @Query("UPDATE Photo p SET p.thumbnailFilename = :thumbnailFilename, p.renditionWidths = :renditionWidths, " +
+            "p.width = :width, p.height = :height, p.processingStatus = :status, " +
+            "p.imageUpdatedAt = :imageUpdatedAt WHERE p.storageFilename = :storageFilename " +
+            "AND p.processingStatus = 'PENDING' AND p.id <> :photoId")
+    int updatePendingDuplicates(@Param("photoId") Long photoId,
+                                @Param("storageFilename") String storageFilename,
+                                @Param("thumbnailFilename") String thumbnailFilename,
+                                @Param("renditionWidths") String renditionWidths,
+                                @Param("width") Integer width,
+                                @Param("height") Integer height,
+                                @Param("status") Photo.ProcessingStatus status,
+                                @Param("imageUpdatedAt") LocalDateTime imageUpdatedAt);
 }
 
@@ -0,0 +1,13 @@
+package local.epul4a.fotoshare.repository;
+
+import local.epul4a.fotoshare.entity.RenditionBackfillJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface RenditionBackfillJobRepository extends JpaRepository<RenditionBackfillJob, Long> {
+    Optional<RenditionBackfillJob> findFirstByStatusOrderByIdDesc(RenditionBackfillJob.Status status);
+    Optional<RenditionBackfillJob> findFirstByOrderByIdDesc();
+}
@@ -4,6 +4,8 @@ import local.epul4a.fotoshare.entity.Share;
 import local.epul4a.fotoshare.entity.Photo;
 import local.epul4a.fotoshare.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -15,5 +17,12 @@ public interface ShareRepository extends JpaRepository<Share, Long> {
     List<Share> findByUser(User user);
     Optional<Share> findByPhotoAndUser(Photo photo, User user);
     boolean existsByPhotoAndUser(Photo photo, User user);
+
+    // Par identifiants : ni la photo ni l'utilisateur n'ont à être chargés (PhotoAclCache)
+    @Query("SELECT s.permissionLevel FROM Share s WHERE s.photo.id = :photoId AND s.user.id = :userId")
+    Optional<Share.PermissionLevel> findPermissionLevel(@Param("photoId") Long photoId, @Param("userId") Long userId);
+
+    @Query("SELECT s.photo.id FROM Share s WHERE s.user.id = :userId")
+    List<Long> findPhotoIdsByUserId(@Param("userId") Long userId);
 }
 
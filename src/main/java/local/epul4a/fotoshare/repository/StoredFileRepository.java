@@ -0,0 +1,46 @@
+package local.epul4a.fotoshare.repository;
+
+import local.epul4a.fotoshare.entity.StoredFile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Les compteurs de références sont modifiés par des UPDATE ciblés : deux uploads ou
+ * suppressions concurrents du même contenu ne peuvent pas écraser le compteur l'un de l'autre.
+ */
+@Repository
+public interface StoredFileRepository extends JpaRepository<StoredFile, String> {
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE StoredFile f SET f.refCount = f.refCount + 1 WHERE f.sha256 = :sha256")
+    int incrementRefCount(@Param("sha256") String sha256);
+
+    // Retourne 0 si une autre requête a inséré la même empreinte entre-temps
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO stored_file (sha256, storage_filename, file_size, volume, ref_count, created_at) " +
+            "VALUES (:sha256, :storageFilename, :fileSize, :volume, 1, CURRENT_TIMESTAMP)", nativeQuery = true)
+    int insertIfAbsent(@Param("sha256") String sha256, @Param("storageFilename") String storageFilename,
+                       @Param("fileSize") long fileSize, @Param("volume") String volume);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE StoredFile f SET f.volume = :volume WHERE f.storageFilename = :storageFilename")
+    int updateVolume(@Param("storageFilename") String storageFilename, @Param("volume") String volume);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE StoredFile f SET f.refCount = f.refCount - 1 WHERE f.sha256 = :sha256 AND f.refCount > 0")
+    int decrementRefCount(@Param("sha256") String sha256);
+
+    // Retourne 1 si le fichier n'est plus référencé : ses fichiers peuvent alors être supprimés
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM StoredFile f WHERE f.sha256 = :sha256 AND f.refCount <= 0")
+    int deleteIfUnreferenced(@Param("sha256") String sha256);
+}
@@ -0,0 +1,351 @@
+package local.epul4a.fotoshare.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Cache disque des images générées à la demande (/photos/{id}/render), borné en octets.
+ * L'index LRU est reconstruit au démarrage à partir des fichiers présents (les plus anciens
+ * d'abord). Les générations concurrentes d'une même clé sont regroupées : une seule requête
+ * décode l'original, les autres attendent son résultat. Un fichier retourné reste réservé
+ * jusqu'à la fermeture de son Lease : une éviction ou une invalidation concurrente le retire
+ * de l'index tout de suite, mais ne le supprime qu'à la dernière libération.
+ */
+@Component
+public class DerivedImageCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DerivedImageCache.class);
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // Ordre d'accès : le premier élément est le moins récemment utilisé (clé -> taille du fichier)
+    private final Map<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    // Fichiers en cours d'envoi (clé -> nombre de réservations) et fichiers retirés de l'index dont
+    // la suppression attend la dernière libération ; protégés par le verrou de entries
+    private final Map<String, Integer> pinned = new HashMap<>();
+    private final Set<String> deferredDeletes = new HashSet<>();
+
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DerivedImageCache(@Value("${fotoshare.render-cache.directory:${fotoshare.upload.directory:uploads}/render-cache}") String directory,
+                             @Value("${fotoshare.render-cache.max-size:512MB}") DataSize maxSize) throws IOException {
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxSize.toBytes();
+        Files.createDirectories(this.directory);
+        loadIndex();
+    }
+
+    @FunctionalInterface
+    public interface Generator {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Retourne le fichier en cache pour cette clé, en le générant si besoin, réservé jusqu'à la
+     * fermeture du Lease. La clé doit être un nom de fichier valide commençant par l'id de la photo
+     * suivi d'un tiret.
+     */
+    public Lease getOrCreate(String key, Generator generator) throws IOException {
+        while (true) {
+            Lease cached = lookup(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+
+            CompletableFuture<Path> created = new CompletableFuture<>();
+            CompletableFuture<Path> running = inFlight.putIfAbsent(key, created);
+            if (running != null) {
+                coalesced.increment();
+                await(running);
+                // Réservé après coup : si le fichier a déjà été évincé, il est régénéré
+                Lease lease = lookup(key);
+                if (lease != null) {
+                    return lease;
+                }
+                continue;
+            }
+            try {
+                // Une autre requête a pu terminer la génération entre lookup et putIfAbsent
+                Lease lease = lookup(key);
+                if (lease != null) {
+                    hits.increment();
+                } else {
+                    misses.increment();
+                    lease = generate(key, generator);
+                }
+                created.complete(lease.path());
+                return lease;
+            } catch (IOException | RuntimeException e) {
+                created.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, created);
+            }
+        }
+    }
+
+    public void invalidate(Long photoId) {
+        String prefix = photoId + "-";
+        List<String> removed = new ArrayList<>();
+        synchronized (entries) {
+            Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    bytes -= entry.getValue();
+                    it.remove();
+                    if (!deferDelete(entry.getKey())) {
+                        removed.add(entry.getKey());
+                    }
+                }
+            }
+        }
+        deleteFiles(removed);
+    }
+
+    // Réserve le fichier sous le verrou : il ne peut pas être supprimé entre la recherche et l'envoi
+    private Lease lookup(String key) {
+        Path path = directory.resolve(key);
+        synchronized (entries) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+            if (Files.exists(path)) {
+                return pin(key, path);
+            }
+            // Fichier supprimé hors de l'application
+            Long size = entries.remove(key);
+            if (size != null) {
+                bytes -= size;
+            }
+        }
+        return null;
+    }
+
+    // Appelé sous le verrou de entries
+    private Lease pin(String key, Path path) {
+        pinned.merge(key, 1, Integer::sum);
+        return new Lease(key, path);
+    }
+
+    // Appelé sous le verrou de entries : true si la suppression attend la libération du fichier
+    private boolean deferDelete(String key) {
+        if (pinned.containsKey(key)) {
+            deferredDeletes.add(key);
+            return true;
+        }
+        return false;
+    }
+
+    private void release(String key) {
+        boolean delete;
+        synchronized (entries) {
+            if (pinned.merge(key, -1, Integer::sum) > 0) {
+                return;
+            }
+            pinned.remove(key);
+            delete = deferredDeletes.remove(key);
+        }
+        if (delete) {
+            deleteFiles(List.of(key));
+        }
+    }
+
+    private Lease generate(String key, Generator generator) throws IOException {
+        Path temp = Files.createTempFile(directory, ".render-", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                generator.write(out);
+            }
+            Path target = directory.resolve(key);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return add(key, Files.size(target));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Indexe le fichier et le retourne réservé, en évinçant les moins récemment utilisés
+    private Lease add(String key, long size) {
+        List<String> evicted = new ArrayList<>();
+        Lease lease;
+        synchronized (entries) {
+            lease = pin(key, directory.resolve(key));
+            // Fichier réécrit sous le même nom : l'ancienne suppression différée ne le concerne plus
+            deferredDeletes.remove(key);
+            Long previous = entries.put(key, size);
+            if (previous != null) {
+                bytes -= previous;
+            }
+            bytes += size;
+
+            Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                // Jamais l'entrée qui vient d'être produite, même si elle dépasse à elle seule le budget
+                if (entry.getKey().equals(key)) {
+                    break;
+                }
+                bytes -= entry.getValue();
+                eldest.remove();
+                evictions.increment();
+                if (!deferDelete(entry.getKey())) {
+                    evicted.add(entry.getKey());
+                }
+            }
+        }
+        deleteFiles(evicted);
+        return lease;
+    }
+
+    private void deleteFiles(List<String> keys) {
+        for (String key : keys) {
+            try {
+                Files.deleteIfExists(directory.resolve(key));
+            } catch (IOException e) {
+                logger.warn("Impossible de supprimer l'image en cache {}", key, e);
+            }
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(Files::isRegularFile).toList();
+        }
+        List<String> leftovers = new ArrayList<>();
+        List<Path> cached = new ArrayList<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.startsWith(".")) {
+                // Fichier temporaire d'une génération interrompue
+                leftovers.add(name);
+            } else {
+                cached.add(file);
+            }
+        }
+        deleteFiles(leftovers);
+        try {
+            cached.sort(Comparator.comparing(file -> {
+                try {
+                    return Files.getLastModifiedTime(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+            for (Path file : cached) {
+                add(file.getFileName().toString(), Files.size(file)).close();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        evictions.reset();
+    }
+
+    private static void await(CompletableFuture<Path> running) throws IOException {
+        try {
+            running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Fichier du cache réservé par une requête : il n'est pas supprimé avant close.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final String key;
+        private final Path path;
+        private boolean closed;
+
+        private Lease(String key, Path path) {
+            this.key = key;
+            this.path = path;
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(key);
+            }
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getSizeBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    public int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package local.epul4a.fotoshare.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stockage sur disque, réparti sur les volumes de StorageVolumes selon la disposition de UploadLayout.
+ * Un fichier est cherché d'abord sur le volume enregistré sur la photo, puis sur les autres :
+ * un fichier déplacé par le vidage d'un volume reste lisible avant la mise à jour de la base.
+ * De même, un original est cherché au niveau indiqué par sa clé puis à l'autre (stockage froid).
+ */
+@Component
+@ConditionalOnProperty(name = "fotoshare.storage.type", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemPhotoStorage implements PhotoStorage {
+
+    private final StorageVolumes volumes;
+
+    public FileSystemPhotoStorage(StorageVolumes volumes) {
+        this.volumes = volumes;
+    }
+
+    // Renommage atomique : un lecteur ne voit jamais un fichier partiellement écrit
+    @Override
+    public void put(StorageKey key, Path source) throws IOException {
+        Path target = layout(key.volume()).prepareWrite(key.storageFilename(), key.filename());
+        moveAtomically(source, target);
+    }
+
+    /**
+     * Déplace source vers target sans jamais exposer de fichier partiel, y compris d'un volume
+     * (système de fichiers) à un autre : copie dans un temporaire à côté de la cible, puis renommage.
+     */
+    static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Path temp = Files.createTempFile(target.getParent(), ".move-", ".tmp");
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Override
+    public InputStream get(StorageKey key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public void stream(StorageKey key, long start, long count, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ)) {
+            // Ne pas fermer ce canal : il fermerait le flux de destination
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long end = start + count;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    // Sur tous les volumes : une copie laissée par un vidage interrompu disparaît aussi
+    @Override
+    public void delete(StorageKey key) throws IOException {
+        for (StorageVolumes.Volume volume : volumes.getVolumes()) {
+            volume.getLayout().delete(key.storageFilename(), key.filename());
+        }
+        if (volumes.getColdLayout() != null) {
+            volumes.getColdLayout().delete(key.storageFilename(), key.filename());
+        }
+    }
+
+    @Override
+    public void moveTier(StorageKey key, boolean cold) throws IOException {
+        UploadLayout coldLayout = volumes.getColdLayout();
+        if (coldLayout == null) {
+            throw new UnsupportedOperationException("Stockage froid non configuré");
+        }
+        Path source = cold ? hotPath(key) : coldLayout.resolve(key.storageFilename(), key.filename());
+        if (!Files.isRegularFile(source)) {
+            Path current = cold ? coldLayout.resolve(key.storageFilename(), key.filename()) : hotPath(key);
+            if (Files.isRegularFile(current)) {
+                // Déjà déplacé par un passage précédent interrompu avant la mise à jour de la base
+                return;
+            }
+            throw new NoSuchFileException(source.toString());
+        }
+        Path target = cold
+                ? coldLayout.prepareWrite(key.storageFilename(), key.filename())
+                : layout(key.volume()).prepareWrite(key.storageFilename(), key.filename());
+        moveAtomically(source, target);
+    }
+
+    @Override
+    public boolean supportsTiering() {
+        return volumes.getColdLayout() != null;
+    }
+
+    @Override
+    public boolean exists(StorageKey key) {
+        return Files.isRegularFile(resolve(key));
+    }
+
+    @Override
+    public long size(StorageKey key) throws IOException {
+        Path file = resolve(key);
+        try {
+            return Files.size(file);
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+    }
+
+    // Sur le volume de destination : le put final est un simple renommage
+    @Override
+    public Path createTempFile(String volume, String prefix) throws IOException {
+        Path root = layout(volume).getRoot();
+        Files.createDirectories(root);
+        return Files.createTempFile(root, prefix, ".tmp");
+    }
+
+    @Override
+    public VolumeReservation reserve(long size) throws IOException {
+        return volumes.reserve(size);
+    }
+
+    @Override
+    public Path localFile(StorageKey key) {
+        Path file = resolve(key);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    // Volume retiré de la configuration : ses fichiers sont cherchés sur les autres
+    private UploadLayout layout(String volume) {
+        StorageVolumes.Volume found = volumes.get(volume);
+        return (found != null ? found : volumes.get(null)).getLayout();
+    }
+
+    // Un changement de niveau en cours entre la lecture de la base et celle du fichier reste sans effet
+    private Path resolve(StorageKey key) {
+        UploadLayout coldLayout = volumes.getColdLayout();
+        if (key.cold() && coldLayout != null) {
+            Path path = coldLayout.resolve(key.storageFilename(), key.filename());
+            return Files.exists(path) ? path : hotPath(key);
+        }
+        Path path = hotPath(key);
+        if (Files.exists(path) || coldLayout == null) {
+            return path;
+        }
+        Path cold = coldLayout.resolve(key.storageFilename(), key.filename());
+        return Files.exists(cold) ? cold : path;
+    }
+
+    private Path hotPath(StorageKey key) {
+        Path path = layout(key.volume()).resolve(key.storageFilename(), key.filename());
+        if (Files.exists(path) || volumes.getVolumes().size() == 1) {
+            return path;
+        }
+        for (StorageVolumes.Volume volume : volumes.getVolumes()) {
+            Path other = volume.getLayout().resolve(key.storageFilename(), key.filename());
+            if (Files.exists(other)) {
+                return other;
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,24 @@
+package local.epul4a.fotoshare.service;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Décodeur utilisé pour générer les déclinaisons d'une photo.
+ * Les implémentations sont des beans Spring essayés dans l'ordre (@Order) : le premier
+ * qui accepte le type MIME et réussit le décodage l'emporte.
+ */
+public interface ImageDecoder {
+
+    boolean supports(String contentType);
+
+    Dimension readDimensions(Path source) throws IOException;
+
+    /**
+     * Décode l'image (la première image pour les formats animés) à une résolution réduite,
+     * sans descendre sous minWidth x minHeight.
+     */
+    BufferedImage decode(Path source, int minWidth, int minHeight) throws IOException;
+}
@@ -0,0 +1,77 @@
+package local.epul4a.fotoshare.service;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Décodeur générique basé sur ImageIO. Les lecteurs TwelveMonkeys présents dans le classpath
+ * (WebP, JPEG CMJN / YCCK) sont enregistrés auprès d'ImageIO et utilisés automatiquement.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class ImageIODecoder implements ImageDecoder {
+
+    static {
+        // Dans un jar Spring Boot, les plugins ne sont pas visibles du class loader système
+        ImageIO.scanForPlugins();
+        // Les fichiers sont lus directement : pas de cache disque temporaire pendant le décodage
+        ImageIO.setUseCache(false);
+    }
+
+    @Override
+    public boolean supports(String contentType) {
+        return contentType != null && ImageIO.getImageReadersByMIMEType(contentType).hasNext();
+    }
+
+    @Override
+    public Dimension readDimensions(Path source) throws IOException {
+        return withReader(source, reader -> new Dimension(reader.getWidth(0), reader.getHeight(0)));
+    }
+
+    /**
+     * Les dimensions sont lues dans l'en-tête, puis le lecteur ne garde qu'un pixel sur N
+     * en ligne et en colonne : l'image pleine résolution n'est jamais allouée.
+     */
+    @Override
+    public BufferedImage decode(Path source, int minWidth, int minHeight) throws IOException {
+        return withReader(source, reader -> {
+            int subsampling = Math.max(1, Math.min(reader.getWidth(0) / minWidth, reader.getHeight(0) / minHeight));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return reader.read(0, param);
+        });
+    }
+
+    private static <T> T withReader(Path source, ReaderCallback<T> callback) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Format d'image non lisible : " + source.getFileName());
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return callback.apply(reader);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReaderCallback<T> {
+        T apply(ImageReader reader) throws IOException;
+    }
+}
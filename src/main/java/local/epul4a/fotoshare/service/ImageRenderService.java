@@ -0,0 +1,162 @@
+package local.epul4a.fotoshare.service;
+
+import local.epul4a.fotoshare.dto.PhotoImageDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Redimensionnement et recadrage à la demande (/photos/{id}/render?w=&h=&fit=&fmt=).
+ * Le résultat est conservé dans le DerivedImageCache : une variante n'est décodée qu'une fois,
+ * même si des centaines de requêtes la demandent en même temps.
+ */
+@Service
+public class ImageRenderService {
+
+    public enum Fit {
+        COVER, CONTAIN
+    }
+
+    private final List<ImageDecoder> decoders;
+    private final DerivedImageCache derivedImageCache;
+    private final PhotoStorage photoStorage;
+
+    @Value("${fotoshare.render.max-dimension:4096}")
+    private int maxDimension;
+
+    public ImageRenderService(List<ImageDecoder> decoders, DerivedImageCache derivedImageCache, PhotoStorage photoStorage) {
+        this.decoders = decoders;
+        this.derivedImageCache = derivedImageCache;
+        this.photoStorage = photoStorage;
+    }
+
+    /**
+     * Valide les paramètres de la requête. Lève IllegalArgumentException s'ils sont invalides.
+     */
+    public RenderOptions parseOptions(Integer width, Integer height, String fit, String format) {
+        if (width == null && height == null) {
+            throw new IllegalArgumentException("Largeur ou hauteur requise");
+        }
+        if ((width != null && (width < 1 || width > maxDimension)) || (height != null && (height < 1 || height > maxDimension))) {
+            throw new IllegalArgumentException("Dimensions comprises entre 1 et " + maxDimension + " pixels");
+        }
+
+        Fit parsedFit;
+        if (fit == null || fit.equalsIgnoreCase("contain")) {
+            parsedFit = Fit.CONTAIN;
+        } else if (fit.equalsIgnoreCase("cover")) {
+            parsedFit = Fit.COVER;
+        } else {
+            throw new IllegalArgumentException("Mode de redimensionnement inconnu : " + fit);
+        }
+        // Recadrer n'a de sens qu'avec les deux dimensions
+        if (width == null || height == null) {
+            parsedFit = Fit.CONTAIN;
+        }
+
+        String parsedFormat;
+        if (format == null || format.equalsIgnoreCase("jpeg") || format.equalsIgnoreCase("jpg")) {
+            parsedFormat = "jpg";
+        } else if (format.equalsIgnoreCase("png")) {
+            parsedFormat = "png";
+        } else {
+            throw new IllegalArgumentException("Format non supporté : " + format);
+        }
+        return new RenderOptions(width, height, parsedFit, parsedFormat);
+    }
+
+    /**
+     * Retourne le fichier de la variante demandée, généré à partir de l'original si besoin, réservé
+     * jusqu'à la fermeture du Lease. Lève NoSuchFileException si l'original n'existe plus dans le stockage.
+     */
+    public DerivedImageCache.Lease render(PhotoImageDTO image, RenderOptions options) throws IOException {
+        StorageKey key = StorageKey.original(image);
+        return derivedImageCache.getOrCreate(cacheKey(image, options), out -> photoStorage.withLocalFile(key, source -> {
+            encode(source, image.getContentType(), options, out);
+            return null;
+        }));
+    }
+
+    // L'id en tête permet l'invalidation à la suppression de la photo ; la version change avec l'image
+    private static String cacheKey(PhotoImageDTO image, RenderOptions options) {
+        String source = image.getStorageFilename() + ":" + image.getImageVersion() + ":" + options.variant();
+        return image.getId() + "-" + DigestUtils.md5DigestAsHex(source.getBytes(StandardCharsets.UTF_8)) + "." + options.format();
+    }
+
+    private void encode(Path source, String contentType, RenderOptions options, OutputStream out) throws IOException {
+        IOException failure = null;
+        for (ImageDecoder decoder : decoders) {
+            if (!decoder.supports(contentType)) {
+                continue;
+            }
+            BufferedImage rendered;
+            try {
+                rendered = render(decoder, source, options);
+            } catch (IOException | RuntimeException e) {
+                failure = e instanceof IOException io ? io : new IOException(e);
+                continue;
+            }
+            if (!ImageIO.write(rendered, options.format(), out)) {
+                throw new IOException("Aucun encodeur pour le format " + options.format());
+            }
+            return;
+        }
+        throw failure != null ? failure : new IOException("Aucun décodeur pour le type " + contentType);
+    }
+
+    private BufferedImage render(ImageDecoder decoder, Path source, RenderOptions options) throws IOException {
+        Dimension size = decoder.readDimensions(source);
+
+        double scaleX = options.width() != null ? (double) options.width() / size.width : Double.MAX_VALUE;
+        double scaleY = options.height() != null ? (double) options.height() / size.height : Double.MAX_VALUE;
+        double scale = options.fit() == Fit.COVER ? Math.max(scaleX, scaleY) : Math.min(scaleX, scaleY);
+        // Jamais d'agrandissement : au pire l'original à sa taille
+        scale = Math.min(scale, 1.0);
+
+        int scaledWidth = Math.max(1, (int) Math.round(size.width * scale));
+        int scaledHeight = Math.max(1, (int) Math.round(size.height * scale));
+        int outputWidth = scaledWidth;
+        int outputHeight = scaledHeight;
+        if (options.fit() == Fit.COVER) {
+            outputWidth = Math.min(options.width(), scaledWidth);
+            outputHeight = Math.min(options.height(), scaledHeight);
+        }
+
+        BufferedImage decoded = decoder.decode(source, scaledWidth, scaledHeight);
+        boolean alpha = options.format().equals("png");
+        BufferedImage output = new BufferedImage(outputWidth, outputHeight,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = output.createGraphics();
+        if (!alpha) {
+            // Fond blanc : les zones transparentes ne doivent pas devenir noires en JPEG
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, outputWidth, outputHeight);
+        }
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        // En mode cover, l'image est centrée et ce qui dépasse est rogné
+        g.drawImage(decoded, -(scaledWidth - outputWidth) / 2, -(scaledHeight - outputHeight) / 2,
+                scaledWidth, scaledHeight, null);
+        g.dispose();
+        return output;
+    }
+
+    public record RenderOptions(Integer width, Integer height, Fit fit, String format) {
+
+        public String variant() {
+            return width + "x" + height + ":" + fit + ":" + format;
+        }
+
+        public String contentType() {
+            return format.equals("png") ? "image/png" : "image/jpeg";
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package local.epul4a.fotoshare.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Signature HMAC des URL d'images des photos non publiques émises par les pages : la page qui
+ * affiche une image vient de vérifier l'accès à la photo, l'URL signée permet ensuite de la servir
+ * sans refaire cette vérification en base. La signature couvre la photo, la variante (image,
+ * miniature, déclinaison), la version de l'image, l'expiration et l'utilisateur à qui l'URL est émise.
+ * Elle couvre aussi la version des droits de la photo (Photo.aclVersion, enregistrée en base et donc
+ * commune à toutes les instances) : un partage ajouté ou retiré change cette version, et les URL
+ * déjà émises pour cette photo seulement repassent par la vérification en base (une visibilité
+ * modifiée change déjà la version de l'image). L'expiration est longue et arrondie à la période
+ * (12 h par défaut) : les pages donnent les mêmes URL pendant toute une période, et le cache du
+ * navigateur, indexé par l'URL complète, sert les images d'une page à l'autre.
+ */
+@Component
+public class ImageUrlSigner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageUrlSigner.class);
+    private static final String ALGORITHM = "HmacSHA256";
+    // 128 bits de signature suffisent et gardent les pages légères
+    private static final int SIGNATURE_BYTES = 16;
+
+    private final byte[] secret;
+    private final long ttlSeconds;
+    private final ThreadLocal<Mac> mac;
+
+    public ImageUrlSigner(@Value("${fotoshare.image-urls.secret:}") String secret,
+                          @Value("${fotoshare.image-urls.ttl:12h}") Duration ttl) {
+        if (secret.isBlank()) {
+            // Les URL déjà émises ne survivent pas à un redémarrage et ne valent que pour cette instance
+            logger.warn("fotoshare.image-urls.secret non configuré : clé de signature aléatoire");
+            this.secret = new byte[32];
+            new SecureRandom().nextBytes(this.secret);
+        } else {
+            this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.ttlSeconds = Math.max(1, ttl.toSeconds());
+        this.mac = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * Expiration des URL signées maintenant : la fin de la période suivante, soit entre une et
+     * deux fois la durée de validité, identique pendant toute la période en cours.
+     */
+    public long expiresAt(long nowSeconds) {
+        return (nowSeconds / ttlSeconds + 2) * ttlSeconds;
+    }
+
+    public String sign(Long photoId, String variant, String version, long aclVersion, long expiresAt, String username) {
+        byte[] digest = mac.get().doFinal(payload(photoId, variant, version, aclVersion, expiresAt, username));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, SIGNATURE_BYTES));
+    }
+
+    /**
+     * Vérifie une signature reçue, en mémoire uniquement : valable si elle n'a pas expiré et
+     * correspond à une URL émise à l'utilisateur connecté avec la version actuelle des droits de la photo.
+     */
+    public boolean verify(Long photoId, String variant, String version, long aclVersion, long expiresAt,
+                          String signature, String username, long nowSeconds) {
+        if (signature == null || username == null || expiresAt < nowSeconds) {
+            return false;
+        }
+        byte[] received;
+        try {
+            received = Base64.getUrlDecoder().decode(signature);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return matches(received, photoId, variant, version, aclVersion, expiresAt, username);
+    }
+
+    private boolean matches(byte[] received, Long photoId, String variant, String version, long aclVersion,
+                            long expiresAt, String username) {
+        byte[] digest = mac.get().doFinal(payload(photoId, variant, version, aclVersion, expiresAt, username));
+        return MessageDigest.isEqual(received, Arrays.copyOf(digest, SIGNATURE_BYTES));
+    }
+
+    private static byte[] payload(Long photoId, String variant, String version, long aclVersion, long expiresAt,
+                                  String username) {
+        String source = photoId + "\n" + variant + "\n" + (version != null ? version : "") + "\n" + aclVersion
+                + "\n" + expiresAt + "\n" + username;
+        return source.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac instance = Mac.getInstance(ALGORITHM);
+            instance.init(new SecretKeySpec(secret, ALGORITHM));
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package local.epul4a.fotoshare.service;
+
+import local.epul4a.fotoshare.dto.PhotoImageDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache mémoire des métadonnées d'envoi des images (PhotoImageDTO), pour les URL signées
+ * qui se passent de la vérification d'accès. Une entrée ne sert que pour la version d'image
+ * demandée : tout changement du contenu, des déclinaisons ou de la visibilité change la version.
+ * Un partage ajouté ou retiré change la version des droits (aclVersion) vérifiée avec la signature :
+ * l'entrée est alors invalidée, tout de suite et après la transaction, et un chargement concurrent
+ * n'est pas conservé (même principe de génération que PhotoAclCache).
+ * Le volume ou le niveau de stockage peuvent être périmés le temps de la durée de vie d'une
+ * entrée, le PhotoStorage cherchant alors le fichier ailleurs.
+ */
+@Component
+public class ImageViewCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<Long, Entry> entries;
+    // Protégée par le moniteur de entries
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ImageViewCache(@Value("${fotoshare.image-urls.metadata-cache-size:10000}") int maxEntries,
+                          @Value("${fotoshare.image-urls.metadata-cache-ttl:5m}") Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        // Ordre d'accès : le premier élément est le moins récemment utilisé
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > ImageViewCache.this.maxEntries;
+            }
+        };
+    }
+
+    public PhotoImageDTO get(Long photoId, String version) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(photoId);
+        }
+        if (entry == null || System.nanoTime() - entry.loadedAt > ttlNanos
+                || !entry.image.getImageVersion().equals(version)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.image;
+    }
+
+    // Génération à lire avant d'interroger la base, puis à passer à put
+    public long generation() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    public void put(PhotoImageDTO image, long generation) {
+        if (maxEntries <= 0 || image.getImageVersion() == null) {
+            return;
+        }
+        synchronized (entries) {
+            if (this.generation == generation) {
+                entries.put(image.getId(), new Entry(image, System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * À appeler dans la transaction qui modifie les partages ou la visibilité d'une photo, ou qui la supprime.
+     */
+    public void invalidate(Long photoId) {
+        evict(photoId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(photoId);
+                }
+            });
+        }
+    }
+
+    private void evict(Long photoId) {
+        synchronized (entries) {
+            generation++;
+            entries.remove(photoId);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private record Entry(PhotoImageDTO image, long loadedAt) {
+    }
+}
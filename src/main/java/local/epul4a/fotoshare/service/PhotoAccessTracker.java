@@ -0,0 +1,93 @@
+package local.epul4a.fotoshare.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compteurs de lecture des photos, agrégés en mémoire et reportés en base par un batch JDBC
+ * pour ne pas ajouter une écriture à chaque image servie. Seules les lectures de l'original
+ * mettent à jour lastAccessedAt, qui décide du passage au stockage froid : les miniatures
+ * et déclinaisons restent toujours sur le volume.
+ */
+@Component
+public class PhotoAccessTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhotoAccessTracker.class);
+
+    private static final String RECORD_ACCESS = "UPDATE photo SET access_count = access_count + ?, " +
+            "last_accessed_at = COALESCE(?, last_accessed_at) WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Long, Access> pending = new ConcurrentHashMap<>();
+
+    public PhotoAccessTracker(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public void record(Long photoId, boolean original) {
+        LocalDateTime now = original ? LocalDateTime.now() : null;
+        // Modification sous le verrou de l'entrée : une entrée retirée par flush n'est plus jamais modifiée,
+        // une lecture arrivée après le retrait crée une nouvelle entrée
+        pending.compute(photoId, (id, access) -> {
+            Access updated = access != null ? access : new Access();
+            updated.count++;
+            if (now != null) {
+                updated.lastOriginalAccess = now;
+            }
+            return updated;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${fotoshare.access.flush-millis:60000}")
+    @PreDestroy
+    public void flush() {
+        Map<Long, Access> batch = new LinkedHashMap<>();
+        for (Long photoId : pending.keySet()) {
+            Access access = pending.remove(photoId);
+            if (access != null) {
+                batch.put(photoId, access);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        batch.forEach((photoId, access) -> rows.add(new Object[]{access.count, access.lastOriginalAccess, photoId}));
+        try {
+            // Une seule transaction : en cas d'échec rien n'est écrit, et tout peut être remis en attente
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(RECORD_ACCESS, rows));
+        } catch (RuntimeException e) {
+            logger.warn("Impossible d'enregistrer les lectures de {} photo(s), nouvel essai au prochain passage", batch.size(), e);
+            batch.forEach((photoId, access) -> pending.merge(photoId, access, Access::merge));
+        }
+    }
+
+    private static class Access {
+        private long count;
+        private LocalDateTime lastOriginalAccess;
+
+        private static Access merge(Access first, Access second) {
+            Access merged = new Access();
+            merged.count = first.count + second.count;
+            merged.lastOriginalAccess = first.lastOriginalAccess == null ? second.lastOriginalAccess
+                    : second.lastOriginalAccess == null || first.lastOriginalAccess.isAfter(second.lastOriginalAccess)
+                    ? first.lastOriginalAccess : second.lastOriginalAccess;
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package local.epul4a.fotoshare.service;
+
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.entity.Share;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache mémoire des droits sur les photos utilisés par SecurityService : propriétaire et visibilité
+ * de chaque photo, et niveau de partage par utilisateur (y compris l'absence de partage).
+ * Réparti en segments LRU indépendants comme ThumbnailCache, borné en nombre de photos.
+ *
+ * Une lecture en base concurrente d'une invalidation ne doit pas remettre en cache l'ancien droit :
+ * l'appelant lit la génération du segment avant d'interroger la base, et l'entrée n'est enregistrée
+ * que si aucune invalidation n'a eu lieu entre-temps. L'invalidation a lieu tout de suite et à
+ * nouveau après la validation de la transaction qui modifie les droits, la base ne montrant
+ * le nouvel état qu'à ce moment-là.
+ */
+@Component
+public class PhotoAclCache {
+
+    private static final int SEGMENT_COUNT = 16;
+    // Au-delà, les partages d'une photo ne sont plus mis en cache (photo partagée très largement)
+    private static final int MAX_SHARES_PER_PHOTO = 1000;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final int maxPhotosPerSegment;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PhotoAclCache(@Value("${fotoshare.acl-cache.max-photos:10000}") int maxPhotos) {
+        this.maxPhotosPerSegment = Math.max(1, maxPhotos / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public record PhotoAcl(Long ownerId, Photo.Visibility visibility) {
+    }
+
+    /**
+     * Génération à lire avant d'interroger la base, puis à passer à putPhoto / putShare.
+     */
+    public long generation(Long photoId) {
+        Segment segment = segmentFor(photoId);
+        synchronized (segment) {
+            return segment.generation;
+        }
+    }
+
+    public PhotoAcl getPhoto(Long photoId) {
+        Segment segment = segmentFor(photoId);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.entries.get(photoId);
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.acl;
+    }
+
+    public void putPhoto(Long photoId, PhotoAcl acl, long generation) {
+        Segment segment = segmentFor(photoId);
+        synchronized (segment) {
+            if (segment.generation != generation || segment.entries.containsKey(photoId)) {
+                return;
+            }
+            segment.entries.put(photoId, new Entry(acl));
+            if (segment.entries.size() > maxPhotosPerSegment) {
+                Long eldest = segment.entries.keySet().iterator().next();
+                segment.entries.remove(eldest);
+            }
+        }
+    }
+
+    /**
+     * Niveau de partage en cache : null si inconnu, Optional.empty() si l'utilisateur n'a pas de partage.
+     */
+    public Optional<Share.PermissionLevel> getShare(Long photoId, Long userId) {
+        Segment segment = segmentFor(photoId);
+        Optional<Share.PermissionLevel> level;
+        synchronized (segment) {
+            Entry entry = segment.entries.get(photoId);
+            level = entry != null ? entry.shares.get(userId) : null;
+        }
+        if (level == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return level;
+    }
+
+    // Sans effet si la photo n'est pas (ou plus) en cache
+    public void putShare(Long photoId, Long userId, Share.PermissionLevel level, long generation) {
+        Segment segment = segmentFor(photoId);
+        synchronized (segment) {
+            Entry entry = segment.entries.get(photoId);
+            if (segment.generation != generation || entry == null || entry.shares.size() >= MAX_SHARES_PER_PHOTO) {
+                return;
+            }
+            entry.shares.put(userId, Optional.ofNullable(level));
+        }
+    }
+
+    /**
+     * À appeler dans la transaction qui modifie les partages, la visibilité ou le propriétaire
+     * d'une photo, ou qui la supprime.
+     */
+    public void invalidate(Long photoId) {
+        Segment segment = segmentFor(photoId);
+        evict(segment, photoId);
+        afterCommit(() -> evict(segment, photoId));
+    }
+
+    // Suppression d'un utilisateur : ses photos et ses partages disparaissent en cascade
+    public void invalidateAll() {
+        evictAll();
+        afterCommit(this::evictAll);
+    }
+
+    private static void evict(Segment segment, Long photoId) {
+        synchronized (segment) {
+            segment.generation++;
+            segment.entries.remove(photoId);
+        }
+    }
+
+    private void evictAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.generation++;
+                segment.entries.clear();
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            // Aussi en cas d'annulation : l'entrée a pu être rechargée pendant la transaction
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getEntryCount() {
+        int total = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                total += segment.entries.size();
+            }
+        }
+        return total;
+    }
+
+    private Segment segmentFor(Long photoId) {
+        return segments[(Long.hashCode(photoId) & Integer.MAX_VALUE) % SEGMENT_COUNT];
+    }
+
+    private static final class Segment {
+        // Ordre d'accès : le premier élément est le moins récemment utilisé
+        private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long generation;
+    }
+
+    private static final class Entry {
+        private final PhotoAcl acl;
+        private final Map<Long, Optional<Share.PermissionLevel>> shares = new HashMap<>();
+
+        private Entry(PhotoAcl acl) {
+            this.acl = acl;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package local.epul4a.fotoshare.service;
+
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.ShareRepository;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Index mémoire des photos accessibles pour le fil « toutes les photos » : un bitmap compressé
+ * (Roaring) des photos publiques, et un par utilisateur de ses photos et de celles partagées avec lui.
+ * Les pages sont lues en parcourant les deux bitmaps à rebours à partir du curseur et en fusionnant
+ * les deux suites, sans construire leur union ni lancer la requête OR / EXISTS que la base ne sait
+ * pas indexer. Les bitmaps sont chargés au premier besoin, bornés en nombre d'utilisateurs (LRU),
+ * puis tenus à jour par les événements d'upload, de suppression, de partage et de visibilité.
+ *
+ * Un bitmap publié n'est plus jamais modifié : un événement en publie une copie modifiée. Les
+ * lectures travaillent donc sur un instantané, sans verrou ; seuls les événements et l'enregistrement
+ * d'un chargement passent par le moniteur de l'index. Les événements sont appliqués après la
+ * validation de leur transaction. Un chargement concurrent d'un événement n'est pas conservé (même
+ * principe de génération que PhotoAclCache) : la page est alors servie par la requête SQL.
+ */
+@Component
+public class PhotoFeedIndex {
+
+    private final PhotoRepository photoRepository;
+    private final ShareRepository shareRepository;
+    private final boolean enabled;
+    private final int maxUsers;
+
+    // Modifiés sous le moniteur de l'index, lus sans verrou
+    private volatile RoaringBitmap publicIds;
+    private final Map<Long, UserIds> userIds = new ConcurrentHashMap<>();
+    private volatile long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PhotoFeedIndex(PhotoRepository photoRepository, ShareRepository shareRepository,
+                          @Value("${fotoshare.feed-index.enabled:true}") boolean enabled,
+                          @Value("${fotoshare.feed-index.max-users:10000}") int maxUsers) {
+        this.photoRepository = photoRepository;
+        this.shareRepository = shareRepository;
+        this.enabled = enabled;
+        this.maxUsers = Math.max(1, maxUsers);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Identifiants des photos accessibles à l'utilisateur inférieurs à beforeId, par identifiant décroissant.
+     * Retourne null si l'index ne peut pas répondre (désactivé, ou chargement concurrent d'une modification).
+     */
+    public Slice<Long> slice(Long userId, long beforeId, int size) {
+        if (!enabled || userId == null) {
+            return null;
+        }
+        Snapshot snapshot = accessibleIds(userId);
+        if (snapshot == null) {
+            return null;
+        }
+        List<Long> ids = new ArrayList<>(size);
+        boolean hasNext = false;
+        if (beforeId > 0) {
+            // Identifiants sur 32 bits non signés : au-delà de 2^32, toutes les photos sont avant le curseur
+            int from = (int) (Math.min(beforeId, 0x1_0000_0000L) - 1);
+            long nextPublic = snapshot.publicIds().previousValue(from);
+            long nextUser = snapshot.userIds().previousValue(from);
+            while (ids.size() < size && (nextPublic >= 0 || nextUser >= 0)) {
+                long id = Math.max(nextPublic, nextUser);
+                ids.add(id);
+                // Une photo publique et possédée (ou partagée) n'est rendue qu'une fois
+                if (nextPublic == id) {
+                    nextPublic = previous(snapshot.publicIds(), id);
+                }
+                if (nextUser == id) {
+                    nextUser = previous(snapshot.userIds(), id);
+                }
+            }
+            hasNext = nextPublic >= 0 || nextUser >= 0;
+        }
+        return new SliceImpl<>(ids, PageRequest.of(0, size), hasNext);
+    }
+
+    private Snapshot accessibleIds(Long userId) {
+        long expectedGeneration = generation;
+        RoaringBitmap cachedPublic = publicIds;
+        UserIds cachedUser = userIds.get(userId);
+        if (cachedPublic != null && cachedUser != null) {
+            cachedUser.lastUsed = System.nanoTime();
+            hits.increment();
+            return new Snapshot(cachedPublic, cachedUser.ids);
+        }
+        misses.increment();
+
+        RoaringBitmap loadedPublic = cachedPublic != null ? null : bitmapOf(photoRepository.findIdsByVisibility(Photo.Visibility.PUBLIC));
+        RoaringBitmap loadedUser = null;
+        if (cachedUser == null) {
+            loadedUser = bitmapOf(photoRepository.findIdsByOwnerId(userId));
+            loadedUser.or(bitmapOf(shareRepository.findPhotoIdsByUserId(userId)));
+            loadedUser.runOptimize();
+        }
+
+        synchronized (this) {
+            if (generation != expectedGeneration) {
+                return null;
+            }
+            // Une transaction en écriture peut lire ses propres modifications non validées : rien n'est conservé
+            if (readsCommittedData()) {
+                if (loadedPublic != null) {
+                    publicIds = loadedPublic;
+                }
+                if (loadedUser != null) {
+                    putUser(userId, loadedUser);
+                }
+            }
+        }
+        return new Snapshot(loadedPublic != null ? loadedPublic : cachedPublic,
+                loadedUser != null ? loadedUser : cachedUser.ids);
+    }
+
+    // Appelé sous le moniteur de l'index ; au-delà de la borne, l'utilisateur le moins récemment lu est retiré
+    private void putUser(Long userId, RoaringBitmap ids) {
+        userIds.put(userId, new UserIds(ids));
+        if (userIds.size() > maxUsers) {
+            userIds.entrySet().stream()
+                    .filter(entry -> !entry.getKey().equals(userId))
+                    .min(Comparator.comparingLong(entry -> entry.getValue().lastUsed))
+                    .ifPresent(eldest -> userIds.remove(eldest.getKey()));
+        }
+    }
+
+    public void photoAdded(Long photoId, Long ownerId, Photo.Visibility visibility) {
+        afterCommit(() -> {
+            synchronized (this) {
+                generation++;
+                int id = toInt(photoId);
+                if (visibility == Photo.Visibility.PUBLIC && publicIds != null) {
+                    publicIds = with(publicIds, id);
+                }
+                UserIds own = userIds.get(ownerId);
+                if (own != null) {
+                    own.ids = with(own.ids, id);
+                }
+            }
+        });
+    }
+
+    public void photoDeleted(Long photoId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                generation++;
+                int id = toInt(photoId);
+                if (publicIds != null) {
+                    publicIds = without(publicIds, id);
+                }
+                // Le propriétaire et les destinataires des partages ne sont plus connus : tous les bitmaps sont parcourus
+                for (UserIds user : userIds.values()) {
+                    user.ids = without(user.ids, id);
+                }
+            }
+        });
+    }
+
+    public void visibilityChanged(Long photoId, Photo.Visibility visibility) {
+        afterCommit(() -> {
+            synchronized (this) {
+                generation++;
+                if (publicIds == null) {
+                    return;
+                }
+                publicIds = visibility == Photo.Visibility.PUBLIC
+                        ? with(publicIds, toInt(photoId)) : without(publicIds, toInt(photoId));
+            }
+        });
+    }
+
+    public void shareAdded(Long photoId, Long userId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                generation++;
+                UserIds user = userIds.get(userId);
+                if (user != null) {
+                    user.ids = with(user.ids, toInt(photoId));
+                }
+            }
+        });
+    }
+
+    // Le propriétaire garde sa photo même s'il s'en était retiré un partage
+    public void shareRemoved(Long photoId, Long userId, Long ownerId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                generation++;
+                UserIds user = userIds.get(userId);
+                if (user != null && !userId.equals(ownerId)) {
+                    user.ids = without(user.ids, toInt(photoId));
+                }
+            }
+        });
+    }
+
+    // Suppression d'un utilisateur : ses photos et ses partages disparaissent en cascade
+    public void invalidateAll() {
+        afterCommit(() -> {
+            synchronized (this) {
+                generation++;
+                publicIds = null;
+                userIds.clear();
+            }
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static boolean readsCommittedData() {
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    // Identifiant suivant dans l'ordre décroissant, -1 s'il n'y en a plus
+    private static long previous(RoaringBitmap ids, long id) {
+        return id == 0 ? -1 : ids.previousValue((int) (id - 1));
+    }
+
+    // Copie modifiée, ou le bitmap lui-même s'il contient déjà l'identifiant
+    private static RoaringBitmap with(RoaringBitmap ids, int id) {
+        if (ids.contains(id)) {
+            return ids;
+        }
+        RoaringBitmap copy = ids.clone();
+        copy.add(id);
+        return copy;
+    }
+
+    private static RoaringBitmap without(RoaringBitmap ids, int id) {
+        if (!ids.contains(id)) {
+            return ids;
+        }
+        RoaringBitmap copy = ids.clone();
+        copy.remove(id);
+        return copy;
+    }
+
+    private static RoaringBitmap bitmapOf(Collection<Long> ids) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (Long id : ids) {
+            bitmap.add(toInt(id));
+        }
+        bitmap.runOptimize();
+        return bitmap;
+    }
+
+    // Identifiants sur 32 bits non signés : au-delà, l'index ne peut pas être utilisé
+    private static int toInt(Long id) {
+        if (id < 0 || id > 0xFFFFFFFFL) {
+            throw new IllegalStateException("Identifiant de photo hors de l'index : " + id);
+        }
+        return (int) id.longValue();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getUserCount() {
+        return userIds.size();
+    }
+
+    private record Snapshot(RoaringBitmap publicIds, RoaringBitmap userIds) {
+    }
+
+    private static final class UserIds {
+        // Remplacé, jamais modifié, sous le moniteur de l'index
+        private volatile RoaringBitmap ids;
+        private volatile long lastUsed = System.nanoTime();
+
+        private UserIds(RoaringBitmap ids) {
+            this.ids = ids;
+        }
+    }
+}
@@ -1,29 +1,44 @@
 package local.epul4a.fotoshare.service;
 
+import local.epul4a.fotoshare.dto.PhotoCursor;
 import local.epul4a.fotoshare.dto.PhotoDTO;
+import local.epul4a.fotoshare.dto.PhotoImageDTO;
 import local.epul4a.fotoshare.dto.PhotoUploadDTO;
 import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.entity.StoredFile;
 import local.epul4a.fotoshare.entity.User;
 import local.epul4a.fotoshare.mapper.PhotoMapper;
 import local.epul4a.fotoshare.repository.ShareRepository;
 import local.epul4a.fotoshare.repository.PhotoRepository;
-import org.springframework.beans.factory.annotation.Value;
+import local.epul4a.fotoshare.repository.StoredFileRepository;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
@@ -33,22 +48,38 @@ public class PhotoService {
     private final SecurityService securityService;
     private final ShareRepository shareRepository;
     private final PhotoMapper photoMapper;
-
-    @Value("${fotoshare.upload.directory:uploads}")
-    private String uploadDirectory;
+    private final ThumbnailCache thumbnailCache;
+    private final RenditionService renditionService;
+    private final DerivedImageCache derivedImageCache;
+    private final StoredFileRepository storedFileRepository;
+    private final PhotoStorage photoStorage;
+    private final ImageViewCache imageViewCache;
+    private final PhotoAclCache aclCache;
+    private final PhotoFeedIndex feedIndex;
 
     private static final List<String> ALLOWED_TYPES = Arrays.asList("image/jpeg", "image/png", "image/gif", "image/webp");
     private static final long MAX_FILE_SIZE = 10 * 1024 * 1024;
-    private static final int THUMBNAIL_SIZE = 300;
+    private static final int SNIFF_BUFFER_SIZE = 4096;
 
-    public PhotoService(PhotoRepository photoRepository, SecurityService securityService, ShareRepository shareRepository, PhotoMapper photoMapper) {
+    public PhotoService(PhotoRepository photoRepository, SecurityService securityService, ShareRepository shareRepository, PhotoMapper photoMapper,
+                        ThumbnailCache thumbnailCache, RenditionService renditionService, DerivedImageCache derivedImageCache,
+                        StoredFileRepository storedFileRepository, PhotoStorage photoStorage, ImageViewCache imageViewCache,
+                        PhotoAclCache aclCache, PhotoFeedIndex feedIndex) {
         this.photoRepository = photoRepository;
         this.securityService = securityService;
         this.shareRepository = shareRepository;
         this.photoMapper = photoMapper;
+        this.thumbnailCache = thumbnailCache;
+        this.renditionService = renditionService;
+        this.derivedImageCache = derivedImageCache;
+        this.storedFileRepository = storedFileRepository;
+        this.photoStorage = photoStorage;
+        this.imageViewCache = imageViewCache;
+        this.aclCache = aclCache;
+        this.feedIndex = feedIndex;
     }
 
-    private void validateFile(MultipartFile file) throws IOException {
+    private void validateFile(MultipartFile file) {
         if (file.getSize() > MAX_FILE_SIZE) {
             throw new IllegalArgumentException("Fichier trop volumineux");
         }
@@ -57,67 +88,126 @@ public class PhotoService {
         if (declaredContentType == null || !ALLOWED_TYPES.contains(declaredContentType)) {
             throw new IllegalArgumentException("Type de fichier non autorisé");
         }
+    }
 
-        Path tempFile = Files.createTempFile("upload-", file.getOriginalFilename());
+    /**
+     * Copie l'upload vers le fichier cible en une seule passe : le type réel est déterminé
+     * à partir des premiers octets, puis le reste du flux est recopié par tampons de taille fixe.
+     * L'empreinte SHA-256 est calculée au fil de la copie.
+     */
+    private UploadedContent writeUpload(MultipartFile file, Path target) throws IOException {
+        MessageDigest digest;
         try {
-            file.transferTo(tempFile);
-            String detectedContentType = Files.probeContentType(tempFile);
-
-            if (detectedContentType == null || !ALLOWED_TYPES.contains(detectedContentType)) {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+             OutputStream out = Files.newOutputStream(target)) {
+            byte[] header = in.readNBytes(SNIFF_BUFFER_SIZE);
+            String detectedContentType = detectContentType(header);
+            if (detectedContentType == null) {
                 throw new IllegalArgumentException("Le contenu du fichier ne correspond pas à un type d'image autorisé");
             }
-        } finally {
-            Files.deleteIfExists(tempFile);
+            out.write(header);
+            long size = header.length + in.transferTo(out);
+            return new UploadedContent(detectedContentType, HexFormat.of().formatHex(digest.digest()), size);
         }
     }
 
-    private String generateFilename(String originalFilename) {
-        String extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-        return UUID.randomUUID() + extension;
+    // Signatures des formats autorisés (JPEG, PNG, GIF, WebP)
+    private static String detectContentType(byte[] header) {
+        if (startsWith(header, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(header, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(header, 0, 'G', 'I', 'F', '8', '7', 'a') || startsWith(header, 0, 'G', 'I', 'F', '8', '9', 'a')) {
+            return "image/gif";
+        }
+        if (startsWith(header, 0, 'R', 'I', 'F', 'F') && startsWith(header, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        return null;
     }
 
-    private void createThumbnail(Path source, Path dest) throws IOException {
-        BufferedImage originalImage = ImageIO.read(source.toFile());
-        if (originalImage == null) return;
-
-        int width = originalImage.getWidth();
-        int height = originalImage.getHeight();
-        int newWidth, newHeight;
-
-        if (width > height) {
-            newWidth = THUMBNAIL_SIZE;
-            newHeight = (int) ((double) height / width * THUMBNAIL_SIZE);
-        } else {
-            newHeight = THUMBNAIL_SIZE;
-            newWidth = (int) ((double) width / height * THUMBNAIL_SIZE);
+    private static boolean startsWith(byte[] data, int offset, int... signature) {
+        if (data.length < offset + signature.length) {
+            return false;
         }
+        for (int i = 0; i < signature.length; i++) {
+            if ((data[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        BufferedImage resizedImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = resizedImage.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g.drawImage(originalImage, 0, 0, newWidth, newHeight, null);
-        g.dispose();
+    private static String storageFilename(UploadedContent content) {
+        String extension = switch (content.contentType()) {
+            case "image/png" -> ".png";
+            case "image/gif" -> ".gif";
+            case "image/webp" -> ".webp";
+            default -> ".jpg";
+        };
+        return content.sha256() + extension;
+    }
 
-        ImageIO.write(resizedImage, "jpg", dest.toFile());
+    /**
+     * Ajoute une référence au fichier de cette empreinte, en le déclarant s'il est nouveau.
+     * Retourne true si le contenu était déjà stocké.
+     */
+    private boolean acquireStoredFile(UploadedContent content, String storageFilename, String volume) {
+        while (true) {
+            if (storedFileRepository.incrementRefCount(content.sha256()) > 0) {
+                return true;
+            }
+            if (storedFileRepository.insertIfAbsent(content.sha256(), storageFilename, content.size(), volume) > 0) {
+                return false;
+            }
+            // Inséré entre-temps par un upload concurrent du même contenu : on l'incrémente
+        }
     }
 
+    /**
+     * Upload en trois étapes : écriture du fichier, insertion de la ligne Photo dans une
+     * transaction courte (celle de save), puis génération de la miniature en arrière-plan.
+     * Aucune connexion JDBC n'est retenue pendant les entrées/sorties disque, et la requête
+     * rend la main dès que l'original est enregistré.
+     * Les originaux sont nommés d'après l'empreinte SHA-256 de leur contenu : un contenu déjà
+     * stocké (renvoi d'une sauvegarde automatique, par exemple) n'est ni réécrit ni retraité.
+     * Un nouvel original est écrit sur le volume choisi par le stockage, en respectant la limite
+     * d'écritures simultanées de ce volume.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public PhotoDTO uploadPhoto(PhotoUploadDTO dto, User owner) throws IOException {
         validateFile(dto.getFile());
 
-        String storageFilename = generateFilename(dto.getFile().getOriginalFilename());
-        String thumbnailFilename = "thumb_" + storageFilename;
-
-        Path uploadPath = Paths.get(uploadDirectory);
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
-        }
-
-        Files.write(uploadPath.resolve(storageFilename), dto.getFile().getBytes());
-
-        try {
-            createThumbnail(uploadPath.resolve(storageFilename), uploadPath.resolve(thumbnailFilename));
-        } catch (Exception e) {
-            thumbnailFilename = storageFilename;
+        // Écriture dans un fichier temporaire puis enregistrement dans le stockage (renommage atomique
+        // ou envoi complet) : un upload interrompu ou refusé ne laisse jamais de fichier partiel sous le nom final
+        UploadedContent content;
+        String storageFilename;
+        String volume;
+        boolean duplicate;
+        try (VolumeReservation reservation = photoStorage.reserve(dto.getFile().getSize())) {
+            volume = reservation.volume();
+            Path tempFile = photoStorage.createTempFile(volume, ".upload-");
+            try {
+                content = writeUpload(dto.getFile(), tempFile);
+                storageFilename = storageFilename(content);
+                duplicate = acquireStoredFile(content, storageFilename, volume);
+                if (duplicate) {
+                    // Le contenu reste sur le volume où il a été stocké la première fois
+                    volume = storedFileRepository.findById(content.sha256()).map(StoredFile::getVolume).orElse(volume);
+                }
+                StorageKey key = StorageKey.original(volume, storageFilename);
+                if (!duplicate || !photoStorage.exists(key)) {
+                    photoStorage.put(key, tempFile);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
         }
 
         Photo photo = new Photo();
@@ -125,12 +215,42 @@ public class PhotoService {
         photo.setDescription(dto.getDescription());
         photo.setOriginalFilename(dto.getFile().getOriginalFilename());
         photo.setStorageFilename(storageFilename);
-        photo.setThumbnailFilename(thumbnailFilename);
-        photo.setContentType(dto.getFile().getContentType());
+        photo.setContentHash(content.sha256());
+        photo.setStorageVolume(volume);
+        photo.setContentType(content.contentType());
+        photo.setFileSize(content.size());
         photo.setVisibility(Photo.Visibility.valueOf(dto.getVisibility()));
+        photo.setProcessingStatus(Photo.ProcessingStatus.PENDING);
         photo.setOwner(owner);
 
-        return photoMapper.toDTO(photoRepository.save(photo));
+        // Les déclinaisons du même contenu existent déjà : elles sont reprises telles quelles
+        Photo existing = duplicate ? photoRepository.findFirstByStorageFilenameAndProcessingStatus(
+                storageFilename, Photo.ProcessingStatus.READY).orElse(null) : null;
+        if (existing != null) {
+            photo.setThumbnailFilename(existing.getThumbnailFilename());
+            photo.setRenditionWidths(existing.getRenditionWidths());
+            photo.setWidth(existing.getWidth());
+            photo.setHeight(existing.getHeight());
+            photo.setProcessingStatus(Photo.ProcessingStatus.READY);
+        }
+
+        try {
+            photo = photoRepository.save(photo);
+        } catch (RuntimeException e) {
+            releaseStoredFile(photo);
+            throw e;
+        }
+        feedIndex.photoAdded(photo.getId(), owner.getId(), photo.getVisibility());
+
+        // Une photo plus ancienne au même contenu est encore en traitement : ce doublon recevra son
+        // résultat (RenditionService.process) sans décoder l'original une seconde fois. Vérifié après
+        // l'enregistrement : si elle se termine entre-temps, elle n'est plus PENDING et le doublon est soumis.
+        if (photo.getProcessingStatus() == Photo.ProcessingStatus.PENDING
+                && !(duplicate && photoRepository.existsByStorageFilenameAndProcessingStatusAndIdLessThan(
+                        storageFilename, Photo.ProcessingStatus.PENDING, photo.getId()))) {
+            renditionService.submit(photo.getId());
+        }
+        return photoMapper.toDTO(photo);
     }
 
     @Transactional(readOnly = true)
@@ -144,23 +264,48 @@ public class PhotoService {
     }
 
     @Transactional(readOnly = true)
-    public Page<PhotoDTO> getPhotosByOwner(User owner, Pageable pageable) {
-        return photoRepository.findByOwner(owner, pageable).map(photoMapper::toDTO);
+    public Slice<PhotoDTO> getPhotosByOwner(User owner, PhotoCursor cursor, int size) {
+        Slice<Photo> photos = cursor.isFirst()
+                ? photoRepository.findLatestByOwner(owner, PageRequest.of(0, size))
+                : photoRepository.findByOwnerBefore(owner, cursor.createdAt(), cursor.id(), PageRequest.of(0, size));
+        return photos.map(photoMapper::toDTO);
     }
 
+    /**
+     * Fil complet, ordonné par identifiant décroissant : lu dans l'index mémoire puis métadonnées
+     * chargées en une requête, sinon par la requête SQL complète.
+     */
     @Transactional(readOnly = true)
-    public Page<PhotoDTO> getAccessiblePhotos(User user, Pageable pageable) {
-        return photoRepository.findAccessiblePhotos(user, pageable).map(photoMapper::toDTO);
+    public Slice<PhotoDTO> getAccessiblePhotos(User user, PhotoCursor cursor, int size) {
+        Slice<Long> ids = feedIndex.slice(user.getId(), cursor.id(), size);
+        if (ids == null) {
+            return photoRepository.findAccessiblePhotosBefore(user, cursor.id(), PageRequest.of(0, size))
+                    .map(photoMapper::toDTO);
+        }
+        Map<Long, Photo> photos = photoRepository.findWithOwnerByIdIn(ids.getContent()).stream()
+                .collect(Collectors.toMap(Photo::getId, Function.identity()));
+        List<PhotoDTO> content = ids.getContent().stream()
+                .map(photos::get)
+                .filter(Objects::nonNull)
+                .map(photoMapper::toDTO)
+                .toList();
+        return new SliceImpl<>(content, ids.getPageable(), ids.hasNext());
     }
 
     @Transactional(readOnly = true)
-    public Page<PhotoDTO> getPublicPhotos(Pageable pageable) {
-        return photoRepository.findByVisibility(Photo.Visibility.PUBLIC, pageable).map(photoMapper::toDTO);
+    public Slice<PhotoDTO> getPublicPhotos(PhotoCursor cursor, int size) {
+        Slice<Photo> photos = cursor.isFirst()
+                ? photoRepository.findLatestByVisibility(Photo.Visibility.PUBLIC, PageRequest.of(0, size))
+                : photoRepository.findByVisibilityBefore(Photo.Visibility.PUBLIC, cursor.createdAt(), cursor.id(), PageRequest.of(0, size));
+        return photos.map(photoMapper::toDTO);
     }
 
     @Transactional(readOnly = true)
-    public Page<PhotoDTO> getSharedWithUser(User user, Pageable pageable) {
-        return photoRepository.findSharedWithUser(user, pageable).map(photoMapper::toDTO);
+    public Slice<PhotoDTO> getSharedWithUser(User user, PhotoCursor cursor, int size) {
+        Slice<Photo> photos = cursor.isFirst()
+                ? photoRepository.findLatestSharedWithUser(user, PageRequest.of(0, size))
+                : photoRepository.findSharedWithUserBefore(user, cursor.createdAt(), cursor.id(), PageRequest.of(0, size));
+        return photos.map(photoMapper::toDTO);
     }
 
     public void deletePhoto(Long id, User user) {
@@ -199,39 +344,176 @@ public class PhotoService {
             throw new RuntimeException("Accès refusé");
         }
 
+        Photo.Visibility visibility = Photo.Visibility.valueOf(dto.getVisibility());
+        if (photo.getVisibility() != visibility) {
+            // Les réponses mises en cache avec l'ancienne visibilité ne doivent plus être revalidées
+            photo.setImageUpdatedAt(LocalDateTime.now());
+        }
+
         photo.setTitle(dto.getTitle());
         photo.setDescription(dto.getDescription());
-        photo.setVisibility(Photo.Visibility.valueOf(dto.getVisibility()));
+        Photo.Visibility previous = photo.getVisibility();
+        photo.setVisibility(visibility);
         photoRepository.save(photo);
+        aclCache.invalidate(id);
+        if (previous != visibility) {
+            imageViewCache.invalidate(id);
+            feedIndex.visibilityChanged(id, visibility);
+        }
     }
 
     @Transactional(readOnly = true)
-    public byte[] getPhotoFile(Long id) throws IOException {
-        Photo photo = photoRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Photo introuvable"));
-        return Files.readAllBytes(Paths.get(uploadDirectory).resolve(photo.getStorageFilename()));
+    public PhotoImageDTO getImageView(Long id, Authentication authentication) {
+        PhotoImageDTO image = photoRepository.findImageView(id, authenticatedUsername(authentication)).orElse(null);
+        if (image != null) {
+            image.setImageVersion(photoMapper.imageVersion(image.getImageUpdatedAt()));
+        }
+        return image;
+    }
+
+    /**
+     * Métadonnées d'envoi pour une URL signée, dont l'accès a déjà été vérifié à l'émission :
+     * sans requête si elles sont en cache. L'appelant vérifie ensuite la signature avec leur
+     * aclVersion (partages modifiés depuis l'émission). Retourne null si l'image a changé de version
+     * depuis la signature (contenu ou visibilité modifiés), l'accès devant alors être revérifié.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public PhotoImageDTO getSignedImageView(Long id, String version) {
+        PhotoImageDTO image = imageViewCache.get(id, version);
+        if (image != null) {
+            return image;
+        }
+        long generation = imageViewCache.generation();
+        image = photoRepository.findImageView(id, null).orElse(null);
+        if (image == null) {
+            return null;
+        }
+        image.setImageVersion(photoMapper.imageVersion(image.getImageUpdatedAt()));
+        image.setAccessible(true);
+        if (!image.getImageVersion().equals(version)) {
+            return null;
+        }
+        imageViewCache.put(image, generation);
+        return image;
+    }
+
+    // Méthodes d'envoi sans accès à la base : pas de transaction, donc pas de connexion JDBC empruntée
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public StorageKey getPhotoKey(PhotoImageDTO image) {
+        return StorageKey.original(image);
+    }
+
+    // La vue en cache fait foi : pas de requête au stockage avant l'envoi, qui lit de toute façon la taille
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public StorageKey getThumbnailKey(PhotoImageDTO image) {
+        if (image.getThumbnailFilename() != null) {
+            return getPhotoKey(image).derived(image.getThumbnailFilename());
+        }
+        return getPhotoKey(image);
+    }
+
+    /**
+     * Choisit la plus petite déclinaison au moins aussi large que demandé.
+     * Retourne null si aucune ne convient : c'est alors l'original qui doit être servi.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Integer resolveRenditionWidth(PhotoImageDTO image, int requestedWidth) {
+        for (int width : RenditionService.parseWidths(image.getRenditionWidths())) {
+            if (width >= requestedWidth) {
+                return width;
+            }
+        }
+        return null;
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public StorageKey getRenditionKey(PhotoImageDTO image, int width) {
+        return getPhotoKey(image).derived(RenditionService.renditionFilename(width, image.getStorageFilename()));
+    }
+
+    /**
+     * Retourne les octets de la miniature depuis le cache mémoire, en la chargeant depuis le stockage
+     * si besoin. Retourne null si la miniature doit être streamée depuis le stockage (absente,
+     * remplacée par l'original ou trop volumineuse pour le cache).
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public byte[] getThumbnailBytes(PhotoImageDTO image, String etag) {
+        byte[] cached = thumbnailCache.get(image.getId(), etag);
+        if (cached != null) {
+            return cached;
+        }
+
+        String thumbnailFilename = image.getThumbnailFilename();
+        if (thumbnailFilename == null || thumbnailFilename.equals(image.getStorageFilename())) {
+            return null;
+        }
+        StorageKey thumbnailKey = getPhotoKey(image).derived(thumbnailFilename);
+        try {
+            long size = photoStorage.size(thumbnailKey);
+            if (size < 0 || size > thumbnailCache.getMaxEntryBytes()) {
+                return null;
+            }
+            byte[] data;
+            try (InputStream in = photoStorage.get(thumbnailKey)) {
+                data = in.readAllBytes();
+            }
+            thumbnailCache.put(image.getId(), etag, data);
+            return data;
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     @Transactional(readOnly = true)
-    public byte[] getThumbnailFile(Long id) throws IOException {
+    public InputStream openPhoto(Long id) throws IOException {
         Photo photo = photoRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Photo introuvable"));
-        Path thumbnailPath = Paths.get(uploadDirectory).resolve(photo.getThumbnailFilename());
+        return photoStorage.get(StorageKey.original(photo));
+    }
 
-        if (Files.exists(thumbnailPath)) {
-            return Files.readAllBytes(thumbnailPath);
+    private String authenticatedUsername(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
         }
-        return Files.readAllBytes(Paths.get(uploadDirectory).resolve(photo.getStorageFilename()));
+        return authentication.getName();
     }
 
     private void deletePhotoFiles(Photo photo) {
+        thumbnailCache.invalidate(photo.getId());
+        imageViewCache.invalidate(photo.getId());
+        aclCache.invalidate(photo.getId());
+        derivedImageCache.invalidate(photo.getId());
+        feedIndex.photoDeleted(photo.getId());
+        releaseStoredFile(photo);
+        if (photo.getProcessingStatus() == Photo.ProcessingStatus.PENDING) {
+            // Les doublons qui attendaient le traitement de cette photo sont repris par l'un d'eux
+            photoRepository.findFirstByStorageFilenameAndProcessingStatusAndIdNotOrderById(
+                    photo.getStorageFilename(), Photo.ProcessingStatus.PENDING, photo.getId())
+                    .ifPresent(next -> renditionService.submit(next.getId()));
+        }
+    }
+
+    /**
+     * Retire la référence de la photo à son original. Les fichiers ne sont supprimés que
+     * si plus aucune photo ne les utilise (toujours pour les photos antérieures au stockage par contenu).
+     */
+    private void releaseStoredFile(Photo photo) {
+        if (photo.getContentHash() != null) {
+            storedFileRepository.decrementRefCount(photo.getContentHash());
+            if (storedFileRepository.deleteIfUnreferenced(photo.getContentHash()) == 0) {
+                return;
+            }
+        }
+        StorageKey original = StorageKey.original(photo);
         try {
-            Files.deleteIfExists(Paths.get(uploadDirectory).resolve(photo.getStorageFilename()));
+            photoStorage.delete(original);
             if (photo.getThumbnailFilename() != null) {
-                Files.deleteIfExists(Paths.get(uploadDirectory).resolve(photo.getThumbnailFilename()));
+                photoStorage.delete(original.derived(photo.getThumbnailFilename()));
             }
         } catch (IOException ignored) {
         }
+        RenditionService.deleteRenditionFiles(photoStorage, original, photo.getRenditionWidths());
     }
 
     @Transactional(readOnly = true)
@@ -244,11 +526,18 @@ public class PhotoService {
         return photoRepository.findAll(pageable).map(photoMapper::toDTO);
     }
 
+    @Transactional(readOnly = true)
+    public Page<PhotoDTO> getPhotosWithoutThumbnail(Pageable pageable) {
+        return photoRepository.findWithoutThumbnail(pageable).map(photoMapper::toDTO);
+    }
+
     public void deletePhotoByAdmin(Long id) {
         Photo photo = photoRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Photo introuvable"));
         deletePhotoFiles(photo);
         photoRepository.delete(photo);
     }
-}
 
+    private record UploadedContent(String contentType, String sha256, long size) {
+    }
+}
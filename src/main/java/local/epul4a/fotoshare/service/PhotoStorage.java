@@ -0,0 +1,97 @@
+package local.epul4a.fotoshare.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stockage des originaux et de leurs déclinaisons. L'implémentation est choisie par la
+ * propriété fotoshare.storage.type : filesystem (par défaut) ou s3.
+ */
+public interface PhotoStorage {
+
+    /**
+     * Enregistre le fichier local source sous cette clé. Le fichier source est consommé
+     * (déplacé ou envoyé) : l'appelant ne doit plus l'utiliser.
+     */
+    void put(StorageKey key, Path source) throws IOException;
+
+    /**
+     * Ouvre le fichier en lecture. Lève NoSuchFileException s'il n'existe pas.
+     */
+    InputStream get(StorageKey key) throws IOException;
+
+    /**
+     * Recopie count octets à partir de start vers out, sans charger le fichier en mémoire.
+     */
+    void stream(StorageKey key, long start, long count, OutputStream out) throws IOException;
+
+    void delete(StorageKey key) throws IOException;
+
+    boolean exists(StorageKey key) throws IOException;
+
+    /**
+     * Taille du fichier en octets, -1 s'il n'existe pas.
+     */
+    long size(StorageKey key) throws IOException;
+
+    /**
+     * Fichier temporaire local à remplir avant un put vers ce volume.
+     */
+    Path createTempFile(String volume, String prefix) throws IOException;
+
+    /**
+     * Choisit le volume d'un nouvel original et y réserve une écriture jusqu'à la fermeture
+     * de la réservation. Sans objet pour un stockage sans volumes.
+     */
+    default VolumeReservation reserve(long size) throws IOException {
+        return VolumeReservation.NONE;
+    }
+
+    /**
+     * Déplace un original vers le stockage froid (cold = true) ou le ramène sur son volume
+     * (cold = false). Sans effet si le fichier est déjà au niveau demandé.
+     */
+    default void moveTier(StorageKey key, boolean cold) throws IOException {
+        throw new UnsupportedOperationException("Stockage froid non disponible");
+    }
+
+    default boolean supportsTiering() {
+        return false;
+    }
+
+    /**
+     * Fichier local directement lisible (décodage, sendfile), null si le stockage est distant.
+     */
+    default Path localFile(StorageKey key) {
+        return null;
+    }
+
+    /**
+     * Exécute callback sur une copie locale du fichier : le fichier lui-même pour un stockage
+     * local, une copie temporaire supprimée ensuite pour un stockage distant.
+     */
+    default <T> T withLocalFile(StorageKey key, LocalFileCallback<T> callback) throws IOException {
+        Path local = localFile(key);
+        if (local != null) {
+            return callback.apply(local);
+        }
+        Path temp = createTempFile(key.volume(), ".download-");
+        try {
+            try (InputStream in = get(key)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return callback.apply(temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @FunctionalInterface
+    interface LocalFileCallback<T> {
+        T apply(Path file) throws IOException;
+    }
+}
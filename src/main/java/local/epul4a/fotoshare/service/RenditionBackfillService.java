@@ -0,0 +1,276 @@
+package local.epul4a.fotoshare.service;
+
+import jakarta.annotation.PreDestroy;
+import local.epul4a.fotoshare.dto.BackfillProgressDTO;
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.entity.RenditionBackfillJob;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.RenditionBackfillJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Régénère les déclinaisons de toutes les photos existantes, par exemple après un changement
+ * de l'échelle fotoshare.renditions.widths. Un thread coordinateur parcourt les photos par id
+ * croissant, page par page, et confie chaque photo au pool borné backfillExecutor en respectant
+ * un débit maximal. Le dernier id traité est enregistré après chaque page : un job interrompu
+ * par un arrêt de l'application reprend au démarrage suivant.
+ */
+@Service
+public class RenditionBackfillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenditionBackfillService.class);
+
+    private final RenditionBackfillJobRepository jobRepository;
+    private final PhotoRepository photoRepository;
+    private final RenditionService renditionService;
+    private final ThreadPoolTaskExecutor backfillExecutor;
+
+    @Value("${fotoshare.backfill.batch-size:100}")
+    private int batchSize;
+
+    @Value("${fotoshare.backfill.max-photos-per-second:20}")
+    private double maxPhotosPerSecond;
+
+    private Thread coordinator;
+    private volatile boolean stopRequested;
+    private volatile boolean cancelRequested;
+
+    private Thread thumbnailFeeder;
+    private volatile boolean shuttingDown;
+
+    // Débit mesuré depuis le lancement (ou la reprise) dans ce processus
+    private volatile long sessionStartNanos;
+    private final AtomicLong sessionProcessed = new AtomicLong();
+
+    public RenditionBackfillService(RenditionBackfillJobRepository jobRepository, PhotoRepository photoRepository,
+                                    RenditionService renditionService, ThreadPoolTaskExecutor backfillExecutor) {
+        this.jobRepository = jobRepository;
+        this.photoRepository = photoRepository;
+        this.renditionService = renditionService;
+        this.backfillExecutor = backfillExecutor;
+    }
+
+    public synchronized RenditionBackfillJob start() {
+        if (isCoordinatorAlive() || jobRepository.findFirstByStatusOrderByIdDesc(RenditionBackfillJob.Status.RUNNING).isPresent()) {
+            throw new RuntimeException("Une régénération est déjà en cours");
+        }
+        RenditionBackfillJob job = new RenditionBackfillJob();
+        job.setTotalCount(photoRepository.count());
+        job = jobRepository.save(job);
+        launch(job);
+        return job;
+    }
+
+    public synchronized void cancel() {
+        if (isCoordinatorAlive()) {
+            // Le coordinateur termine les photos en cours puis marque le job annulé
+            cancelRequested = true;
+            stopRequested = true;
+            return;
+        }
+        jobRepository.findFirstByStatusOrderByIdDesc(RenditionBackfillJob.Status.RUNNING).ifPresent(job -> {
+            job.setStatus(RenditionBackfillJob.Status.CANCELLED);
+            job.setFinishedAt(LocalDateTime.now());
+            jobRepository.save(job);
+        });
+    }
+
+    /**
+     * Relance la génération pour toutes les photos sans vraie miniature. Un thread d'arrière-plan
+     * confie les photos à backfillExecutor par lots, au débit maximal de la régénération : ni la
+     * requête admin ni les uploads ne décodent à la place du pool.
+     * Retourne le nombre de photos planifiées.
+     */
+    public synchronized int backfillMissingThumbnails() {
+        if (thumbnailFeeder != null && thumbnailFeeder.isAlive()) {
+            throw new RuntimeException("Une génération des miniatures est déjà en cours");
+        }
+        List<Long> photoIds = photoRepository.findIdsWithoutThumbnail();
+        if (!photoIds.isEmpty()) {
+            thumbnailFeeder = new Thread(() -> processAll(photoIds), "thumbnail-backfill");
+            thumbnailFeeder.setDaemon(true);
+            thumbnailFeeder.start();
+        }
+        return photoIds.size();
+    }
+
+    void processAll(List<Long> photoIds) {
+        long intervalNanos = intervalNanos();
+        long nextSlot = System.nanoTime();
+        try {
+            for (int from = 0; from < photoIds.size() && !shuttingDown; from += batchSize) {
+                List<CompletableFuture<Photo.ProcessingStatus>> results = new ArrayList<>();
+                for (Long photoId : photoIds.subList(from, Math.min(from + batchSize, photoIds.size()))) {
+                    nextSlot = awaitSlot(nextSlot, intervalNanos);
+                    results.add(CompletableFuture.supplyAsync(() -> renditionService.process(photoId), backfillExecutor));
+                }
+                // Un lot à la fois : au plus batchSize photos en attente dans le pool
+                for (CompletableFuture<Photo.ProcessingStatus> result : results) {
+                    try {
+                        result.join();
+                    } catch (CompletionException e) {
+                        logger.warn("Échec de la génération d'une miniature", e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Reprise d'un job interrompu par un arrêt de l'application
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void resume() {
+        jobRepository.findFirstByStatusOrderByIdDesc(RenditionBackfillJob.Status.RUNNING).ifPresent(job -> {
+            logger.info("Reprise de la régénération {} après la photo {}", job.getId(), job.getLastPhotoId());
+            launch(job);
+        });
+    }
+
+    // Arrêt sans annulation : le job reste RUNNING et reprendra au prochain démarrage
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            stopRequested = true;
+            shuttingDown = true;
+            thread = coordinator;
+        }
+        if (thread != null) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    public BackfillProgressDTO getProgress() {
+        RenditionBackfillJob job = jobRepository.findFirstByOrderByIdDesc().orElse(null);
+        if (job == null) {
+            return null;
+        }
+        BackfillProgressDTO progress = new BackfillProgressDTO();
+        progress.setJobId(job.getId());
+        progress.setStatus(job.getStatus().name());
+        progress.setTotalCount(job.getTotalCount());
+        progress.setProcessedCount(job.getProcessedCount());
+        progress.setFailedCount(job.getFailedCount());
+        progress.setLastPhotoId(job.getLastPhotoId());
+        progress.setStartedAt(job.getStartedAt());
+        progress.setFinishedAt(job.getFinishedAt());
+
+        double rate;
+        if (job.getStatus() == RenditionBackfillJob.Status.RUNNING && isCoordinatorAlive()) {
+            long elapsed = System.nanoTime() - sessionStartNanos;
+            rate = elapsed > 0 ? sessionProcessed.get() * 1e9 / elapsed : 0;
+        } else {
+            LocalDateTime end = job.getFinishedAt() != null ? job.getFinishedAt() : job.getUpdatedAt();
+            long millis = end != null ? Duration.between(job.getStartedAt(), end).toMillis() : 0;
+            rate = millis > 0 ? job.getProcessedCount() * 1000.0 / millis : 0;
+        }
+        progress.setPhotosPerSecond(rate);
+        if (job.getStatus() == RenditionBackfillJob.Status.RUNNING && rate > 0) {
+            long remaining = Math.max(0, job.getTotalCount() - job.getProcessedCount());
+            progress.setEtaSeconds((long) Math.ceil(remaining / rate));
+        }
+        return progress;
+    }
+
+    private boolean isCoordinatorAlive() {
+        return coordinator != null && coordinator.isAlive();
+    }
+
+    private void launch(RenditionBackfillJob job) {
+        stopRequested = false;
+        cancelRequested = false;
+        sessionStartNanos = System.nanoTime();
+        sessionProcessed.set(0);
+        coordinator = new Thread(() -> run(job), "backfill-coordinator");
+        coordinator.setDaemon(true);
+        coordinator.start();
+    }
+
+    void run(RenditionBackfillJob job) {
+        long intervalNanos = intervalNanos();
+        long nextSlot = System.nanoTime();
+        try {
+            while (!stopRequested) {
+                List<Long> photoIds = photoRepository.findIdsAfter(job.getLastPhotoId(), PageRequest.of(0, batchSize));
+                if (photoIds.isEmpty()) {
+                    job.setStatus(RenditionBackfillJob.Status.COMPLETED);
+                    job.setFinishedAt(LocalDateTime.now());
+                    break;
+                }
+
+                List<CompletableFuture<Photo.ProcessingStatus>> results = new ArrayList<>();
+                Long lastSubmitted = null;
+                for (Long photoId : photoIds) {
+                    if (stopRequested) {
+                        break;
+                    }
+                    nextSlot = awaitSlot(nextSlot, intervalNanos);
+                    results.add(CompletableFuture.supplyAsync(() -> renditionService.process(photoId), backfillExecutor));
+                    lastSubmitted = photoId;
+                }
+
+                // Point de reprise : toutes les photos jusqu'à lastSubmitted sont traitées
+                for (CompletableFuture<Photo.ProcessingStatus> result : results) {
+                    Photo.ProcessingStatus status;
+                    try {
+                        status = result.join();
+                    } catch (CompletionException e) {
+                        logger.warn("Échec de la régénération d'une photo", e.getCause());
+                        status = Photo.ProcessingStatus.FAILED;
+                    }
+                    if (status == Photo.ProcessingStatus.FAILED) {
+                        job.setFailedCount(job.getFailedCount() + 1);
+                    }
+                    job.setProcessedCount(job.getProcessedCount() + 1);
+                    sessionProcessed.incrementAndGet();
+                }
+                if (lastSubmitted != null) {
+                    job.setLastPhotoId(lastSubmitted);
+                }
+                job.setUpdatedAt(LocalDateTime.now());
+                job = jobRepository.save(job);
+            }
+            if (cancelRequested) {
+                job.setStatus(RenditionBackfillJob.Status.CANCELLED);
+                job.setFinishedAt(LocalDateTime.now());
+            }
+            job.setUpdatedAt(LocalDateTime.now());
+            jobRepository.save(job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Le job reste RUNNING : il reprendra depuis le dernier point enregistré
+            logger.error("Régénération {} interrompue", job.getId(), e);
+        }
+    }
+
+    private long intervalNanos() {
+        return maxPhotosPerSecond > 0 ? (long) (1e9 / maxPhotosPerSecond) : 0;
+    }
+
+    // Espacement régulier des soumissions pour plafonner le débit ; retourne le créneau suivant
+    private static long awaitSlot(long nextSlot, long intervalNanos) throws InterruptedException {
+        long now = System.nanoTime();
+        if (nextSlot > now) {
+            TimeUnit.NANOSECONDS.sleep(nextSlot - now);
+        }
+        return Math.max(nextSlot, now) + intervalNanos;
+    }
+}
@@ -0,0 +1,398 @@
+package local.epul4a.fotoshare.service;
+
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Génère les déclinaisons d'une photo (miniature et échelle de largeurs pour srcset) en arrière-plan,
+ * sur le pool borné renditionExecutor. La photo reste PENDING jusqu'à la fin du traitement.
+ */
+@Service
+public class RenditionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenditionService.class);
+
+    private static final int THUMBNAIL_SIZE = 300;
+
+    private final PhotoRepository photoRepository;
+    private final ThreadPoolTaskExecutor renditionExecutor;
+    private final List<ImageDecoder> decoders;
+    private final PhotoStorage photoStorage;
+
+    @Value("${fotoshare.renditions.widths:160,320,640,1280,2048}")
+    private int[] renditionWidths;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder processingNanos = new LongAdder();
+
+    // Photos refusées par la file pleine, restées PENDING
+    private final Set<Long> rejected = ConcurrentHashMap.newKeySet();
+    private Thread retryFeeder;
+
+    public RenditionService(PhotoRepository photoRepository, ThreadPoolTaskExecutor renditionExecutor,
+                            List<ImageDecoder> decoders, PhotoStorage photoStorage) {
+        this.photoRepository = photoRepository;
+        this.renditionExecutor = renditionExecutor;
+        this.decoders = decoders;
+        this.photoStorage = photoStorage;
+    }
+
+    /**
+     * Planifie la génération des déclinaisons. Si une transaction est en cours, le traitement
+     * attend son commit : le worker doit pouvoir relire la ligne Photo.
+     */
+    public void submit(Long photoId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    execute(photoId);
+                }
+            });
+        } else {
+            execute(photoId);
+        }
+    }
+
+    // File pleine : la photo reste PENDING et sera soumise à nouveau par retryRejected, jamais traitée par l'appelant
+    private void execute(Long photoId) {
+        try {
+            renditionExecutor.execute(() -> process(photoId));
+        } catch (RejectedExecutionException e) {
+            logger.warn("File de génération pleine, la photo {} sera traitée plus tard", photoId);
+            rejected.add(photoId);
+        }
+    }
+
+    /**
+     * Nouvelle soumission des photos refusées par la file, par un thread d'arrière-plan qui
+     * attend les places libres dans le pool.
+     */
+    @Scheduled(fixedDelayString = "${fotoshare.renditions.retry-millis:30000}")
+    public synchronized void retryRejected() {
+        if (rejected.isEmpty() || (retryFeeder != null && retryFeeder.isAlive())) {
+            return;
+        }
+        List<Long> photoIds = new ArrayList<>();
+        for (Long photoId : rejected) {
+            if (rejected.remove(photoId)) {
+                photoIds.add(photoId);
+            }
+        }
+        retryFeeder = new Thread(() -> processAll(photoIds), "rendition-retry");
+        retryFeeder.setDaemon(true);
+        retryFeeder.start();
+    }
+
+    /**
+     * Reprise des photos restées en attente lors d'un arrêt de l'application. Les photos sont
+     * soumises par un thread d'arrière-plan : le démarrage n'attend pas leur traitement.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePending() {
+        List<Long> photoIds = photoRepository.findIdsByProcessingStatus(Photo.ProcessingStatus.PENDING);
+        if (photoIds.isEmpty()) {
+            return;
+        }
+        logger.info("Reprise de la génération des déclinaisons de {} photo(s) en attente", photoIds.size());
+        Thread feeder = new Thread(() -> processAll(photoIds), "rendition-resume");
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    // Au plus une photo en attente ou en cours par thread du pool : la file reste libre pour les uploads
+    void processAll(List<Long> photoIds) {
+        Semaphore inFlight = new Semaphore(Math.max(1, renditionExecutor.getMaxPoolSize()));
+        try {
+            for (int i = 0; i < photoIds.size(); i++) {
+                Long photoId = photoIds.get(i);
+                inFlight.acquire();
+                try {
+                    renditionExecutor.execute(() -> {
+                        try {
+                            process(photoId);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // File remplie par les uploads ou pool arrêté : les photos restantes attendent le passage
+                    // suivant de retryRejected (ou le prochain démarrage)
+                    logger.warn("Reprise des photos en attente interrompue, {} photo(s) reportée(s)", photoIds.size() - i);
+                    rejected.addAll(photoIds.subList(i, photoIds.size()));
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Génère les déclinaisons d'une photo et enregistre le résultat.
+     * Retourne le statut obtenu, ou null si la photo n'existe plus.
+     */
+    Photo.ProcessingStatus process(Long photoId) {
+        Photo photo = photoRepository.findById(photoId).orElse(null);
+        if (photo == null) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        StorageKey original = StorageKey.original(photo);
+        String thumbnailFilename = thumbnailFilename(photo.getStorageFilename());
+        RenditionSet renditions = null;
+        Photo.ProcessingStatus status = Photo.ProcessingStatus.READY;
+        try {
+            renditions = createRenditions(original, photo.getContentType());
+            completed.increment();
+        } catch (Exception e) {
+            logger.warn("Échec de la génération des déclinaisons de la photo {}", photoId, e);
+            failed.increment();
+            if (photo.getThumbnailFilename() != null) {
+                // Régénération : les déclinaisons précédentes restent enregistrées et servies, seul l'échec est compté
+                deleteUnrecordedRenditions(original, photo.getRenditionWidths());
+                return Photo.ProcessingStatus.FAILED;
+            }
+            // Jamais l'original à la place de la miniature : la photo apparaît dans le rapport admin
+            thumbnailFilename = null;
+            status = Photo.ProcessingStatus.FAILED;
+        } finally {
+            processingNanos.add(System.nanoTime() - start);
+        }
+
+        // La date change pour que les URL versionnées des déclinaisons soient renouvelées
+        String widths = renditions != null ? renditions.widthsAsString() : null;
+        Integer width = renditions != null ? renditions.width() : null;
+        Integer height = renditions != null ? renditions.height() : null;
+        LocalDateTime now = LocalDateTime.now();
+        int updated = photoRepository.updateProcessingResult(photoId, thumbnailFilename, widths, width, height, status, now);
+        // Après la photo elle-même : un doublon enregistré ensuite la voit traitée et n'attend pas (PhotoService.uploadPhoto)
+        photoRepository.updatePendingDuplicates(photoId, photo.getStorageFilename(), thumbnailFilename,
+                widths, width, height, status, now);
+        if (updated == 0 && renditions != null && !photoRepository.existsByStorageFilename(photo.getStorageFilename())) {
+            // Photo supprimée pendant le traitement : les fichiers générés seraient orphelins
+            deleteRenditionFiles(photoStorage, original, widths);
+        } else if (renditions != null) {
+            // Largeurs retirées de l'échelle depuis la génération précédente
+            deleteStaleRenditions(original, photo.getRenditionWidths(), renditions.widths());
+        }
+        return status;
+    }
+
+    /**
+     * Produit la miniature et l'échelle de déclinaisons à partir d'un seul décodage. L'original
+     * est décodé sous-échantillonné juste au-dessus de la plus grande déclinaison utile, puis
+     * chaque déclinaison est calculée à partir de la précédente (réduction d'au plus ~2x à chaque
+     * étape, ce qui garde un résultat net en bilinéaire). Les encodages JPEG, indépendants, sont
+     * faits en parallèle. Avec un stockage distant, l'original est téléchargé une seule fois
+     * dans un fichier temporaire.
+     */
+    private RenditionSet createRenditions(StorageKey original, String contentType) throws IOException {
+        return photoStorage.withLocalFile(original, source -> {
+            IOException failure = null;
+            for (ImageDecoder decoder : decoders) {
+                if (!decoder.supports(contentType)) {
+                    continue;
+                }
+                try {
+                    return createRenditions(decoder, source, original);
+                } catch (IOException | RuntimeException e) {
+                    // Le décodeur suivant réécrira les fichiers éventuellement produits
+                    failure = e instanceof IOException io ? io : new IOException(e);
+                }
+            }
+            throw failure != null ? failure : new IOException("Aucun décodeur pour le type " + contentType);
+        });
+    }
+
+    private RenditionSet createRenditions(ImageDecoder decoder, Path source, StorageKey original) throws IOException {
+        String storageFilename = original.storageFilename();
+        Dimension size = decoder.readDimensions(source);
+
+        List<Rendition> targets = new ArrayList<>();
+        List<Integer> widths = new ArrayList<>();
+        for (int width : renditionWidths) {
+            // Inutile d'agrandir : l'original sert de plus grande déclinaison
+            if (width < size.width) {
+                targets.add(new Rendition(renditionFilename(width, storageFilename),
+                        width, Math.max(1, (int) Math.round((double) size.height * width / size.width))));
+                widths.add(width);
+            }
+        }
+        widths.sort(null);
+        targets.add(thumbnailTarget(storageFilename, size));
+        targets.sort(Comparator.comparingInt(Rendition::width).reversed());
+
+        Rendition largest = targets.get(0);
+        BufferedImage current = decoder.decode(source, largest.width(), largest.height());
+        Map<Rendition, BufferedImage> images = new LinkedHashMap<>();
+        for (Rendition target : targets) {
+            current = scale(current, target.width(), target.height());
+            images.put(target, current);
+        }
+
+        try {
+            images.entrySet().parallelStream().forEach(entry -> {
+                try {
+                    writeAtomically(entry.getValue(), original.derived(entry.getKey().filename()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        return new RenditionSet(widths, size.width, size.height);
+    }
+
+    // Les photos au contenu identique partagent leurs déclinaisons : un fichier n'est jamais lu à moitié écrit
+    private void writeAtomically(BufferedImage image, StorageKey target) throws IOException {
+        Path temp = photoStorage.createTempFile(target.volume(), ".rendition-");
+        try {
+            ImageIO.write(image, "jpg", temp.toFile());
+            photoStorage.put(target, temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Rendition thumbnailTarget(String storageFilename, Dimension size) {
+        int newWidth, newHeight;
+        if (size.width > size.height) {
+            newWidth = THUMBNAIL_SIZE;
+            newHeight = (int) ((double) size.height / size.width * THUMBNAIL_SIZE);
+        } else {
+            newHeight = THUMBNAIL_SIZE;
+            newWidth = (int) ((double) size.width / size.height * THUMBNAIL_SIZE);
+        }
+        return new Rendition(thumbnailFilename(storageFilename), Math.max(1, newWidth), Math.max(1, newHeight));
+    }
+
+    private static BufferedImage scale(BufferedImage source, int width, int height) {
+        BufferedImage resizedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resizedImage.createGraphics();
+        // Fond blanc : les zones transparentes (PNG, GIF, WebP) ne doivent pas devenir noires en JPEG
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return resizedImage;
+    }
+
+    public static String thumbnailFilename(String storageFilename) {
+        return "thumb_" + storageFilename;
+    }
+
+    public static String renditionFilename(int width, String storageFilename) {
+        return "r" + width + "_" + storageFilename;
+    }
+
+    public static List<Integer> parseWidths(String renditionWidths) {
+        List<Integer> widths = new ArrayList<>();
+        if (renditionWidths != null && !renditionWidths.isBlank()) {
+            for (String width : renditionWidths.split(",")) {
+                widths.add(Integer.parseInt(width.trim()));
+            }
+        }
+        return widths;
+    }
+
+    public static void deleteRenditionFiles(PhotoStorage photoStorage, StorageKey original, String renditionWidths) {
+        try {
+            photoStorage.delete(original.derived(thumbnailFilename(original.storageFilename())));
+            for (int width : parseWidths(renditionWidths)) {
+                photoStorage.delete(original.derived(renditionFilename(width, original.storageFilename())));
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void deleteStaleRenditions(StorageKey original, String previousWidths, List<Integer> currentWidths) {
+        try {
+            for (int width : parseWidths(previousWidths)) {
+                if (!currentWidths.contains(width)) {
+                    photoStorage.delete(original.derived(renditionFilename(width, original.storageFilename())));
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Déclinaisons de l'échelle actuelle écrites avant l'échec, absentes de la génération enregistrée
+    private void deleteUnrecordedRenditions(StorageKey original, String recordedWidths) {
+        List<Integer> recorded = parseWidths(recordedWidths);
+        try {
+            for (int width : renditionWidths) {
+                if (!recorded.contains(width)) {
+                    photoStorage.delete(original.derived(renditionFilename(width, original.storageFilename())));
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    public int getQueueDepth() {
+        return renditionExecutor.getThreadPoolExecutor().getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return renditionExecutor.getActiveCount();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getAverageProcessingMillis() {
+        long count = completed.sum() + failed.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(processingNanos.sum() / count);
+    }
+
+    private record Rendition(String filename, int width, int height) {
+    }
+
+    private record RenditionSet(List<Integer> widths, int width, int height) {
+        String widthsAsString() {
+            return widths.stream().map(String::valueOf).collect(Collectors.joining(","));
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package local.epul4a.fotoshare.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stockage dans un bucket compatible S3 (AWS S3, MinIO, Ceph...). Les clés reprennent la
+ * répartition ab/cd/ de UploadLayout sous un préfixe configurable (les volumes sont ignorés).
+ * Les fichiers plus gros qu'une part sont envoyés en multipart, les parts en parallèle ; la lecture
+ * d'une plage HTTP se traduit par un GET avec en-tête Range, sans télécharger l'objet entier.
+ */
+@Component
+@ConditionalOnProperty(name = "fotoshare.storage.type", havingValue = "s3")
+public class S3PhotoStorage implements PhotoStorage {
+
+    // Taille minimale d'une part imposée par S3 (sauf la dernière)
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String prefix;
+    private final long partSize;
+    private final ExecutorService uploadExecutor;
+    private final Path tempDirectory;
+
+    @Autowired
+    public S3PhotoStorage(@Value("${fotoshare.storage.s3.endpoint:}") String endpoint,
+                          @Value("${fotoshare.storage.s3.region:us-east-1}") String region,
+                          @Value("${fotoshare.storage.s3.path-style:true}") boolean pathStyle,
+                          @Value("${fotoshare.storage.s3.access-key:}") String accessKey,
+                          @Value("${fotoshare.storage.s3.secret-key:}") String secretKey,
+                          @Value("${fotoshare.storage.s3.bucket}") String bucket,
+                          @Value("${fotoshare.storage.s3.prefix:}") String prefix,
+                          @Value("${fotoshare.storage.s3.part-size:8MB}") DataSize partSize,
+                          @Value("${fotoshare.storage.s3.upload-threads:4}") int uploadThreads,
+                          @Value("${fotoshare.upload.directory:uploads}") String uploadDirectory) throws IOException {
+        this(buildClient(endpoint, region, pathStyle, accessKey, secretKey), bucket, prefix,
+                Math.max(MIN_PART_SIZE, partSize.toBytes()), uploadThreads, Paths.get(uploadDirectory));
+    }
+
+    S3PhotoStorage(S3Client s3, String bucket, String prefix, long partSize, int uploadThreads, Path tempDirectory) throws IOException {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.partSize = partSize;
+        this.uploadExecutor = Executors.newFixedThreadPool(Math.max(1, uploadThreads), new CustomizableThreadFactory("s3-upload-"));
+        // Fichiers temporaires seulement (uploads en cours, décodage des originaux)
+        this.tempDirectory = tempDirectory;
+        Files.createDirectories(tempDirectory);
+    }
+
+    private static S3Client buildClient(String endpoint, String region, boolean pathStyle, String accessKey, String secretKey) {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                // MinIO n'accepte en général pas les noms de bucket en sous-domaine
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(pathStyle).build());
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        // Sans clés explicites : chaîne par défaut du SDK (variables d'environnement, profil, rôle IAM)
+        if (!accessKey.isBlank()) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)));
+        }
+        return builder.build();
+    }
+
+    @PreDestroy
+    public void close() {
+        uploadExecutor.shutdown();
+        s3.close();
+    }
+
+    @Override
+    public void put(StorageKey key, Path source) throws IOException {
+        String objectKey = objectKey(key);
+        try {
+            long size = Files.size(source);
+            if (size <= partSize) {
+                s3.putObject(PutObjectRequest.builder().bucket(bucket).key(objectKey).contentLength(size).build(),
+                        RequestBody.fromFile(source));
+            } else {
+                putMultipart(objectKey, source, size);
+            }
+        } catch (S3Exception e) {
+            throw new IOException("Échec de l'envoi de " + objectKey, e);
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    private void putMultipart(String objectKey, Path source, long size) throws IOException {
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket).key(objectKey).build()).uploadId();
+        try {
+            List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+            int partCount = (int) ((size + partSize - 1) / partSize);
+            for (int i = 0; i < partCount; i++) {
+                int partNumber = i + 1;
+                long offset = i * partSize;
+                long length = Math.min(partSize, size - offset);
+                parts.add(CompletableFuture.supplyAsync(
+                        () -> uploadPart(objectKey, uploadId, source, partNumber, offset, length), uploadExecutor));
+            }
+            // Attend toutes les parts, y compris après un échec, avant d'annuler l'envoi
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).join();
+
+            List<CompletedPart> completed = parts.stream().map(CompletableFuture::join).toList();
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket).key(objectKey).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                    .build());
+        } catch (CompletionException | S3Exception e) {
+            // Sans annulation, les parts déjà reçues resteraient facturées dans le bucket
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket).key(objectKey).uploadId(uploadId).build());
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Échec de l'envoi multipart de " + objectKey, cause);
+        }
+    }
+
+    private CompletedPart uploadPart(String objectKey, String uploadId, Path source, int partNumber, long offset, long length) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Fin de fichier inattendue dans " + source);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.flip();
+        String etag = s3.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucket).key(objectKey).uploadId(uploadId)
+                        .partNumber(partNumber).contentLength(length).build(),
+                RequestBody.fromByteBuffer(buffer)).eTag();
+        return CompletedPart.builder().partNumber(partNumber).eTag(etag).build();
+    }
+
+    @Override
+    public InputStream get(StorageKey key) throws IOException {
+        String objectKey = objectKey(key);
+        try {
+            return s3.getObject(GetObjectRequest.builder().bucket(bucket).key(objectKey).build());
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(objectKey);
+        } catch (S3Exception e) {
+            throw new IOException("Échec de la lecture de " + objectKey, e);
+        }
+    }
+
+    @Override
+    public void stream(StorageKey key, long start, long count, OutputStream out) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        String objectKey = objectKey(key);
+        GetObjectRequest request = GetObjectRequest.builder().bucket(bucket).key(objectKey)
+                .range("bytes=" + start + "-" + (start + count - 1)).build();
+        try (InputStream in = s3.getObject(request)) {
+            in.transferTo(out);
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(objectKey);
+        } catch (S3Exception e) {
+            throw new IOException("Échec de la lecture de " + objectKey, e);
+        }
+    }
+
+    @Override
+    public void delete(StorageKey key) throws IOException {
+        try {
+            s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(objectKey(key)).build());
+        } catch (S3Exception e) {
+            throw new IOException("Échec de la suppression de " + objectKey(key), e);
+        }
+    }
+
+    @Override
+    public boolean exists(StorageKey key) throws IOException {
+        return size(key) >= 0;
+    }
+
+    @Override
+    public long size(StorageKey key) throws IOException {
+        try {
+            return s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(objectKey(key)).build()).contentLength();
+        } catch (NoSuchKeyException e) {
+            return -1;
+        } catch (S3Exception e) {
+            // HEAD n'a pas de corps : certains serveurs ne renvoient qu'un 404 sans code d'erreur
+            if (e.statusCode() == 404) {
+                return -1;
+            }
+            throw new IOException("Échec de la lecture de " + objectKey(key), e);
+        }
+    }
+
+    @Override
+    public Path createTempFile(String volume, String prefix) throws IOException {
+        return Files.createTempFile(tempDirectory, prefix, ".tmp");
+    }
+
+    String objectKey(StorageKey key) {
+        return prefix + UploadLayout.shardOf(key.storageFilename()) + "/" + key.filename();
+    }
+}
@@ -1,5 +1,7 @@
 package local.epul4a.fotoshare.service;
 
+import local.epul4a.fotoshare.config.AuthenticatedUser;
+import local.epul4a.fotoshare.dto.PhotoAclDTO;
 import local.epul4a.fotoshare.entity.Album;
 import local.epul4a.fotoshare.entity.Share;
 import local.epul4a.fotoshare.entity.Photo;
@@ -10,8 +12,17 @@ import local.epul4a.fotoshare.repository.PhotoRepository;
 import local.epul4a.fotoshare.repository.UserRepository;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
 @Service("securityService")
 @Transactional(readOnly = true)
 public class SecurityService {
@@ -20,44 +31,54 @@ public class SecurityService {
     private final UserRepository userRepository;
     private final ShareRepository shareRepository;
     private final AlbumRepository albumRepository;
+    private final PhotoAclCache aclCache;
 
-    public SecurityService(PhotoRepository photoRepository, UserRepository userRepository, ShareRepository shareRepository, AlbumRepository albumRepository) {
+    public SecurityService(PhotoRepository photoRepository, UserRepository userRepository, ShareRepository shareRepository,
+                           AlbumRepository albumRepository, PhotoAclCache aclCache) {
         this.photoRepository = photoRepository;
         this.userRepository = userRepository;
         this.shareRepository = shareRepository;
         this.albumRepository = albumRepository;
+        this.aclCache = aclCache;
     }
 
+    // Vérifications sur les photos : sans transaction, rien n'est lu en base quand les droits sont en cache
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean canAccessPhoto(Authentication authentication, Long photoId) {
-        Photo photo = photoRepository.findById(photoId).orElse(null);
+        long generation = aclCache.generation(photoId);
+        PhotoAclCache.PhotoAcl photo = photoAcl(photoId, generation);
         if (photo == null) return false;
-        if (photo.getVisibility() == Photo.Visibility.PUBLIC) return true;
+        if (photo.visibility() == Photo.Visibility.PUBLIC) return true;
 
         User user = getUserFromAuth(authentication);
         if (user == null) return false;
         if (user.getRole() == User.Role.ADMIN) return true;
 
-        return isOwner(user, photo) || shareRepository.existsByPhotoAndUser(photo, user);
+        return isOwner(user, photo) || shareLevel(photoId, user, generation) != null;
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean canEditPhoto(Authentication authentication, Long photoId) {
         User user = getUserFromAuth(authentication);
         if (user == null) return false;
 
-        Photo photo = photoRepository.findById(photoId).orElse(null);
+        long generation = aclCache.generation(photoId);
+        PhotoAclCache.PhotoAcl photo = photoAcl(photoId, generation);
         if (photo == null) return false;
 
         if (isOwner(user, photo)) return true;
 
-        Share.PermissionLevel level = getPermissionLevel(user, photo);
+        Share.PermissionLevel level = shareLevel(photoId, user, generation);
         return level == Share.PermissionLevel.ADMIN;
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean canDeletePhoto(Authentication authentication, Long photoId) {
         User user = getUserFromAuth(authentication);
         if (user == null) return false;
 
-        Photo photo = photoRepository.findById(photoId).orElse(null);
+        long generation = aclCache.generation(photoId);
+        PhotoAclCache.PhotoAcl photo = photoAcl(photoId, generation);
         if (photo == null) return false;
 
         if (user.getRole() == User.Role.ADMIN) return true;
@@ -65,27 +86,119 @@ public class SecurityService {
         if (isOwner(user, photo)) return true;
 
         if (user.getRole() == User.Role.MODERATOR) {
-            return (photo.getVisibility() == Photo.Visibility.PUBLIC) || shareRepository.existsByPhotoAndUser(photo, user);
+            return (photo.visibility() == Photo.Visibility.PUBLIC) || shareLevel(photoId, user, generation) != null;
         }
 
         return false;
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean canCommentPhoto(Authentication authentication, Long photoId) {
         User user = getUserFromAuth(authentication);
         if (user == null) return false;
 
-        Photo photo = photoRepository.findById(photoId).orElse(null);
+        long generation = aclCache.generation(photoId);
+        PhotoAclCache.PhotoAcl photo = photoAcl(photoId, generation);
         if (photo == null) return false;
 
         if (user.getRole() == User.Role.ADMIN || isOwner(user, photo)) {
             return true;
         }
 
-        Share.PermissionLevel level = getPermissionLevel(user, photo);
+        Share.PermissionLevel level = shareLevel(photoId, user, generation);
         return level == Share.PermissionLevel.COMMENT || level == Share.PermissionLevel.ADMIN;
     }
 
+    /**
+     * Droits sur toute une page de photos, en une requête au plus (les entrées déjà en cache n'en coûtent pas).
+     * Une photo absente de la map n'est pas accessible ; sinon le niveau suit les vérifications unitaires :
+     * READ = accès, COMMENT = accès et commentaire, ADMIN = accès, commentaire et modification.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Map<Long, Share.PermissionLevel> permissionLevels(Authentication authentication, Collection<Long> photoIds) {
+        Map<Long, Share.PermissionLevel> levels = new HashMap<>();
+        if (photoIds == null || photoIds.isEmpty()) return levels;
+
+        User user = getUserFromAuth(authentication);
+        List<Long> missing = new ArrayList<>();
+        Map<Long, Long> generations = new HashMap<>();
+        for (Long photoId : photoIds) {
+            if (photoId == null || levels.containsKey(photoId) || generations.containsKey(photoId)) continue;
+            long generation = aclCache.generation(photoId);
+            PhotoAclCache.PhotoAcl photo = aclCache.getPhoto(photoId);
+            Optional<Share.PermissionLevel> share = user == null ? Optional.empty() : aclCache.getShare(photoId, user.getId());
+            if (photo != null && share != null) {
+                putLevel(levels, photoId, user, photo, share.orElse(null));
+            } else {
+                missing.add(photoId);
+                generations.put(photoId, generation);
+            }
+        }
+        if (missing.isEmpty()) return levels;
+
+        for (PhotoAclDTO row : photoRepository.findAcls(missing, user == null ? null : user.getId())) {
+            long generation = generations.get(row.getPhotoId());
+            PhotoAclCache.PhotoAcl photo = new PhotoAclCache.PhotoAcl(row.getOwnerId(), row.getVisibility());
+            aclCache.putPhoto(row.getPhotoId(), photo, generation);
+            if (user != null) {
+                aclCache.putShare(row.getPhotoId(), user.getId(), row.getPermissionLevel(), generation);
+            }
+            putLevel(levels, row.getPhotoId(), user, photo, row.getPermissionLevel());
+        }
+        return levels;
+    }
+
+    // Identifiants accessibles parmi ceux demandés, même résolution groupée que permissionLevels
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Set<Long> canAccessPhotos(Authentication authentication, Collection<Long> photoIds) {
+        return permissionLevels(authentication, photoIds).keySet();
+    }
+
+    private void putLevel(Map<Long, Share.PermissionLevel> levels, Long photoId, User user,
+                          PhotoAclCache.PhotoAcl photo, Share.PermissionLevel shareLevel) {
+        Share.PermissionLevel level;
+        if (user != null && isOwner(user, photo)) {
+            level = Share.PermissionLevel.ADMIN;
+        } else if (shareLevel != null) {
+            // Un administrateur commente partout mais ne modifie qu'avec un partage ADMIN, comme canEditPhoto
+            level = user.getRole() == User.Role.ADMIN && shareLevel == Share.PermissionLevel.READ
+                    ? Share.PermissionLevel.COMMENT : shareLevel;
+        } else if (user != null && user.getRole() == User.Role.ADMIN) {
+            level = Share.PermissionLevel.COMMENT;
+        } else if (photo.visibility() == Photo.Visibility.PUBLIC) {
+            level = Share.PermissionLevel.READ;
+        } else {
+            return;
+        }
+        levels.put(photoId, level);
+    }
+
+    // Propriétaire et visibilité depuis le cache, sinon depuis la base (generation lue avant)
+    private PhotoAclCache.PhotoAcl photoAcl(Long photoId, long generation) {
+        PhotoAclCache.PhotoAcl acl = aclCache.getPhoto(photoId);
+        if (acl != null) return acl;
+
+        Photo photo = photoRepository.findById(photoId).orElse(null);
+        if (photo == null) return null;
+        acl = new PhotoAclCache.PhotoAcl(photo.getOwner().getId(), photo.getVisibility());
+        aclCache.putPhoto(photoId, acl, generation);
+        return acl;
+    }
+
+    // Niveau de partage de l'utilisateur, null s'il n'en a pas ; l'absence de partage est aussi mise en cache
+    private Share.PermissionLevel shareLevel(Long photoId, User user, long generation) {
+        Optional<Share.PermissionLevel> cached = aclCache.getShare(photoId, user.getId());
+        if (cached != null) return cached.orElse(null);
+
+        Share.PermissionLevel level = shareRepository.findPermissionLevel(photoId, user.getId()).orElse(null);
+        aclCache.putShare(photoId, user.getId(), level, generation);
+        return level;
+    }
+
+    private boolean isOwner(User user, PhotoAclCache.PhotoAcl photo) {
+        return photo.ownerId().equals(user.getId());
+    }
+
     public boolean isOwner(User user, Photo photo) {
         return photo.getOwner().getId().equals(user.getId());
     }
@@ -120,10 +233,14 @@ public class SecurityService {
         return shareRepository.findByPhotoAndUser(photo, user).map(Share::getPermissionLevel).orElse(null);
     }
 
+    // Sans requête pour une session ouverte par le formulaire de connexion (AuthenticatedUser)
     private User getUserFromAuth(Authentication authentication) {
         if (authentication == null || !authentication.isAuthenticated()) {
             return null;
         }
+        if (authentication.getPrincipal() instanceof AuthenticatedUser principal) {
+            return principal.toUser();
+        }
         return userRepository.findByUsername(authentication.getName()).orElse(null);
     }
 }
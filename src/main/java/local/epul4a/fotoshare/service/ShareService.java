@@ -23,14 +23,21 @@ public class ShareService {
     private final UserRepository userRepository;
     private final SecurityService securityService;
     private final ShareMapper shareMapper;
+    private final PhotoAclCache aclCache;
+    private final PhotoFeedIndex feedIndex;
+    private final ImageViewCache imageViewCache;
 
     public ShareService(ShareRepository shareRepository, PhotoRepository photoRepository,
-                          UserRepository userRepository, SecurityService securityService, ShareMapper shareMapper) {
+                          UserRepository userRepository, SecurityService securityService, ShareMapper shareMapper,
+                          PhotoAclCache aclCache, PhotoFeedIndex feedIndex, ImageViewCache imageViewCache) {
         this.shareRepository = shareRepository;
         this.photoRepository = photoRepository;
         this.userRepository = userRepository;
         this.securityService = securityService;
         this.shareMapper = shareMapper;
+        this.aclCache = aclCache;
+        this.feedIndex = feedIndex;
+        this.imageViewCache = imageViewCache;
     }
 
     public void sharePhoto(Long photoId, Long userId, Share.PermissionLevel permissionLevel, User owner) {
@@ -53,6 +60,10 @@ public class ShareService {
         share.setUser(targetUser);
         share.setPermissionLevel(permissionLevel);
         shareRepository.save(share);
+        photoRepository.incrementAclVersion(photoId);
+        aclCache.invalidate(photoId);
+        imageViewCache.invalidate(photoId);
+        feedIndex.shareAdded(photoId, userId);
     }
 
     public void updatePermission(Long partageId, Share.PermissionLevel permissionLevel, User owner) {
@@ -65,6 +76,7 @@ public class ShareService {
 
         share.setPermissionLevel(permissionLevel);
         shareRepository.save(share);
+        aclCache.invalidate(share.getPhoto().getId());
     }
 
     public void revokeAccess(Long partageId, User owner) {
@@ -75,6 +87,11 @@ public class ShareService {
             throw new RuntimeException("Accès refusé");
         }
         shareRepository.delete(share);
+        // Les URL d'images signées avant le retrait ne sont plus acceptées
+        photoRepository.incrementAclVersion(share.getPhoto().getId());
+        aclCache.invalidate(share.getPhoto().getId());
+        imageViewCache.invalidate(share.getPhoto().getId());
+        feedIndex.shareRemoved(share.getPhoto().getId(), share.getUser().getId(), share.getPhoto().getOwner().getId());
     }
 
     @Transactional(readOnly = true)
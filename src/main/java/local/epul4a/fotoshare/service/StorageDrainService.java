@@ -0,0 +1,240 @@
+package local.epul4a.fotoshare.service;
+
+import jakarta.annotation.PreDestroy;
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.StoredFileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vidage d'un volume de stockage (disque défaillant ou à retirer) : chaque original et ses
+ * déclinaisons sont copiés sur un autre volume choisi comme pour un upload, le volume des photos
+ * est mis à jour, puis les fichiers d'origine sont supprimés. Le volume ne reçoit plus de nouveaux
+ * fichiers dès le lancement ; pour qu'il reste exclu après un redémarrage, il faut l'ajouter
+ * à fotoshare.storage.draining-volumes.
+ */
+@Service
+public class StorageDrainService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageDrainService.class);
+
+    private final StorageVolumes volumes;
+    private final PhotoRepository photoRepository;
+    private final StoredFileRepository storedFileRepository;
+
+    @Value("${fotoshare.storage.drain.batch-size:100}")
+    private int batchSize;
+
+    @Value("${fotoshare.storage.drain.pause-millis:200}")
+    private long pauseMillis;
+
+    private Thread worker;
+    private volatile boolean stopRequested;
+
+    private volatile String volume;
+    private final AtomicLong moved = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    public StorageDrainService(StorageVolumes volumes, PhotoRepository photoRepository,
+                               StoredFileRepository storedFileRepository) {
+        this.volumes = volumes;
+        this.photoRepository = photoRepository;
+        this.storedFileRepository = storedFileRepository;
+    }
+
+    public synchronized void start(String volume) {
+        if (isRunning()) {
+            throw new RuntimeException("Un vidage de volume est déjà en cours");
+        }
+        if (volumes.get(volume) == null) {
+            throw new RuntimeException("Volume introuvable");
+        }
+        if (volumes.getVolumes().stream().noneMatch(other -> !other.getName().equals(volume) && !other.isDraining())) {
+            throw new RuntimeException("Aucun autre volume ne peut recevoir les fichiers");
+        }
+        volumes.setDraining(volume, true);
+        this.volume = volume;
+        stopRequested = false;
+        moved.set(0);
+        failed.set(0);
+        startedAt = LocalDateTime.now();
+        finishedAt = null;
+        worker = new Thread(() -> run(volume), "storage-drain");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            stopRequested = true;
+            thread = worker;
+        }
+        if (thread != null) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    void run(String volume) {
+        // Parcours par nom croissant : un original en échec n'est pas retenté dans le même passage
+        String after = "";
+        try {
+            while (!stopRequested) {
+                List<String> batch = photoRepository.findStorageFilenamesOnVolume(volume, volumes.getDefaultVolume(),
+                        after, PageRequest.of(0, batchSize));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (String storageFilename : batch) {
+                    if (stopRequested) {
+                        break;
+                    }
+                    drain(volume, storageFilename);
+                    after = storageFilename;
+                }
+                TimeUnit.MILLISECONDS.sleep(pauseMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error("Vidage du volume {} interrompu", volume, e);
+        } finally {
+            finishedAt = LocalDateTime.now();
+            logger.info("Vidage du volume {} : {} original(aux) déplacé(s), {} échec(s)", volume, moved.get(), failed.get());
+        }
+    }
+
+    private void drain(String volume, String storageFilename) {
+        UploadLayout source = volumes.get(volume).getLayout();
+        try {
+            List<Path> files = filesOf(source, storageFilename);
+            if (files.isEmpty()) {
+                // Déjà déplacé (photo au contenu identique ajoutée pendant le vidage) : seule la base est à corriger
+                relocate(volume, storageFilename);
+                return;
+            }
+            long size = 0;
+            for (Path file : files) {
+                size += Files.size(file);
+            }
+
+            try (VolumeReservation reservation = volumes.reserve(size)) {
+                UploadLayout target = volumes.get(reservation.volume()).getLayout();
+                for (Path file : files) {
+                    copyAtomically(file, target.prepareWrite(storageFilename, file.getFileName().toString()));
+                }
+                // Les lectures suivent le nouveau volume ; celles en cours lisent encore les fichiers d'origine
+                photoRepository.updateStorageVolume(storageFilename, reservation.volume());
+                storedFileRepository.updateVolume(storageFilename, reservation.volume());
+            }
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            moved.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Impossible de déplacer {} hors du volume {}", storageFilename, volume, e);
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Original et déclinaisons présents sur le volume : ceux du sous-répertoire de l'original,
+     * et ceux restés à la racine si la migration de l'ancienne disposition n'est pas terminée.
+     */
+    private List<Path> filesOf(UploadLayout layout, String storageFilename) throws IOException {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(storageFilename);
+        names.add(RenditionService.thumbnailFilename(storageFilename));
+        photoRepository.findFirstByStorageFilenameAndProcessingStatus(storageFilename, Photo.ProcessingStatus.READY)
+                .ifPresent(photo -> RenditionService.parseWidths(photo.getRenditionWidths())
+                        .forEach(width -> names.add(RenditionService.renditionFilename(width, storageFilename))));
+        Path directory = layout.shardedPath(storageFilename, storageFilename).getParent();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String filename = file.getFileName().toString();
+                if (!filename.startsWith(".") && UploadLayout.storageFilenameOf(filename).equals(storageFilename)) {
+                    names.add(filename);
+                }
+            }
+        } catch (NoSuchFileException ignored) {
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (String name : names) {
+            Path file = layout.resolve(storageFilename, name);
+            if (Files.isRegularFile(file)) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private void relocate(String volume, String storageFilename) {
+        for (StorageVolumes.Volume candidate : volumes.getVolumes()) {
+            if (!candidate.getName().equals(volume) && Files.isRegularFile(candidate.getLayout().resolve(storageFilename))) {
+                photoRepository.updateStorageVolume(storageFilename, candidate.getName());
+                storedFileRepository.updateVolume(storageFilename, candidate.getName());
+                moved.incrementAndGet();
+                return;
+            }
+        }
+        logger.warn("Original {} introuvable sur tous les volumes", storageFilename);
+        failed.incrementAndGet();
+    }
+
+    // Copie sans jamais exposer de fichier partiel : les lectures peuvent déjà chercher sur le volume cible
+    private static void copyAtomically(Path source, Path target) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), ".drain-", ".tmp");
+        try {
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return worker != null && worker.isAlive();
+    }
+
+    public String getVolume() {
+        return volume;
+    }
+
+    public long getMovedCount() {
+        return moved.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+}
@@ -0,0 +1,37 @@
+package local.epul4a.fotoshare.service;
+
+import local.epul4a.fotoshare.dto.PhotoImageDTO;
+import local.epul4a.fotoshare.entity.Photo;
+
+/**
+ * Identifie un fichier dans le PhotoStorage : l'original (filename = storageFilename) ou l'une
+ * de ses déclinaisons. Le nom de stockage de l'original détermine le répertoire (ou le préfixe)
+ * commun à l'original et à ses déclinaisons ; volume est celui enregistré sur la photo
+ * (null pour le volume par défaut ou un stockage S3), cold indique un original déplacé
+ * vers le stockage froid (les déclinaisons restent toujours sur le volume).
+ */
+public record StorageKey(String volume, String storageFilename, String filename, boolean cold) {
+
+    public static StorageKey original(String volume, String storageFilename) {
+        return new StorageKey(volume, storageFilename, storageFilename, false);
+    }
+
+    public static StorageKey original(Photo photo) {
+        return new StorageKey(photo.getStorageVolume(), photo.getStorageFilename(), photo.getStorageFilename(),
+                photo.getStorageTier() == Photo.StorageTier.COLD);
+    }
+
+    public static StorageKey original(PhotoImageDTO image) {
+        return new StorageKey(image.getStorageVolume(), image.getStorageFilename(), image.getStorageFilename(),
+                image.getStorageTier() == Photo.StorageTier.COLD);
+    }
+
+    // Déclinaison du même original, sur le même volume
+    public StorageKey derived(String filename) {
+        return new StorageKey(volume, storageFilename, filename, false);
+    }
+
+    public StorageKey withTier(boolean cold) {
+        return new StorageKey(volume, storageFilename, filename, cold);
+    }
+}
@@ -0,0 +1,210 @@
+package local.epul4a.fotoshare.service;
+
+import jakarta.annotation.PreDestroy;
+import local.epul4a.fotoshare.dto.PhotoImageDTO;
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stockage à deux niveaux : les originaux qu'aucune photo n'a lus depuis
+ * fotoshare.storage.cold.after-days jours sont déplacés vers le stockage froid
+ * (fotoshare.storage.cold.directory, disque moins cher), les déclinaisons restant sur le volume.
+ * Un original froid reste lisible ; sa lecture le fait remonter en arrière-plan.
+ * Le passage est lancé chaque nuit ou depuis l'administration.
+ */
+@Service
+public class StorageTieringService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageTieringService.class);
+
+    private final PhotoStorage photoStorage;
+    private final PhotoRepository photoRepository;
+    private final TaskExecutor promotionExecutor;
+
+    @Value("${fotoshare.storage.cold.after-days:30}")
+    private int afterDays;
+
+    @Value("${fotoshare.storage.cold.batch-size:100}")
+    private int batchSize;
+
+    @Value("${fotoshare.storage.cold.pause-millis:200}")
+    private long pauseMillis;
+
+    private Thread worker;
+    private volatile boolean stopRequested;
+
+    private final Set<String> promoting = ConcurrentHashMap.newKeySet();
+    private final AtomicLong demoted = new AtomicLong();
+    private final AtomicLong promoted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    public StorageTieringService(PhotoStorage photoStorage, PhotoRepository photoRepository,
+                                 @Qualifier("promotionExecutor") TaskExecutor promotionExecutor) {
+        this.photoStorage = photoStorage;
+        this.photoRepository = photoRepository;
+        this.promotionExecutor = promotionExecutor;
+    }
+
+    public synchronized void start() {
+        if (!photoStorage.supportsTiering()) {
+            throw new RuntimeException("Stockage froid non configuré");
+        }
+        if (isRunning()) {
+            throw new RuntimeException("Un passage vers le stockage froid est déjà en cours");
+        }
+        stopRequested = false;
+        demoted.set(0);
+        failed.set(0);
+        startedAt = LocalDateTime.now();
+        finishedAt = null;
+        worker = new Thread(this::run, "storage-tiering");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Scheduled(cron = "${fotoshare.storage.cold.cron:0 0 3 * * *}")
+    public synchronized void scheduledStart() {
+        if (photoStorage.supportsTiering() && !isRunning()) {
+            start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            stopRequested = true;
+            thread = worker;
+        }
+        if (thread != null) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    void run() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(afterDays);
+        // Parcours par nom croissant : un original en échec n'est pas retenté dans le même passage
+        String after = "";
+        try {
+            while (!stopRequested) {
+                List<String> batch = photoRepository.findColdCandidates(cutoff, after, PageRequest.of(0, batchSize));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (String storageFilename : batch) {
+                    if (stopRequested) {
+                        break;
+                    }
+                    demote(storageFilename);
+                    after = storageFilename;
+                }
+                TimeUnit.MILLISECONDS.sleep(pauseMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error("Passage vers le stockage froid interrompu", e);
+        } finally {
+            finishedAt = LocalDateTime.now();
+            logger.info("Stockage froid : {} original(aux) déplacé(s), {} échec(s)", demoted.get(), failed.get());
+        }
+    }
+
+    private void demote(String storageFilename) {
+        try {
+            Photo photo = photoRepository.findFirstByStorageFilename(storageFilename).orElse(null);
+            if (photo == null || promoting.contains(storageFilename)) {
+                return;
+            }
+            // Base mise à jour après le déplacement : entre les deux, les lectures trouvent le fichier au niveau froid
+            photoStorage.moveTier(StorageKey.original(photo.getStorageVolume(), storageFilename), true);
+            photoRepository.updateStorageTier(storageFilename, Photo.StorageTier.COLD);
+            demoted.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Impossible de déplacer {} vers le stockage froid", storageFilename, e);
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remonte en arrière-plan l'original froid qui vient d'être lu. Plusieurs lectures simultanées
+     * du même original ne déclenchent qu'une remontée.
+     */
+    public void promote(PhotoImageDTO image) {
+        String storageFilename = image.getStorageFilename();
+        if (!photoStorage.supportsTiering() || !promoting.add(storageFilename)) {
+            return;
+        }
+        StorageKey key = StorageKey.original(image);
+        try {
+            promotionExecutor.execute(() -> {
+                try {
+                    photoStorage.moveTier(key, false);
+                    photoRepository.updateStorageTier(storageFilename, Photo.StorageTier.HOT);
+                    promoted.incrementAndGet();
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Impossible de remonter {} depuis le stockage froid", storageFilename, e);
+                } finally {
+                    promoting.remove(storageFilename);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            promoting.remove(storageFilename);
+        }
+    }
+
+    public boolean isEnabled() {
+        return photoStorage.supportsTiering();
+    }
+
+    public synchronized boolean isRunning() {
+        return worker != null && worker.isAlive();
+    }
+
+    public long getColdPhotoCount() {
+        return photoRepository.countByStorageTier(Photo.StorageTier.COLD);
+    }
+
+    public int getAfterDays() {
+        return afterDays;
+    }
+
+    public long getDemotedCount() {
+        return demoted.get();
+    }
+
+    public long getPromotedCount() {
+        return promoted.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+}
@@ -0,0 +1,225 @@
+package local.epul4a.fotoshare.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Volumes du stockage sur disque : le répertoire d'upload (volume par défaut) et les volumes
+ * supplémentaires de fotoshare.storage.volumes (nom=chemin, séparés par des virgules).
+ * Un nouvel original est placé sur un volume tiré au sort proportionnellement à son espace libre,
+ * en évitant ceux qui ont déjà le nombre maximal d'écritures en cours. Un volume en cours de vidage
+ * (StorageDrainService) ne reçoit plus de nouveaux fichiers. Le stockage froid
+ * (fotoshare.storage.cold.directory), s'il est configuré, reçoit les originaux peu lus
+ * (StorageTieringService).
+ */
+@Component
+public class StorageVolumes {
+
+    private static final long WRITE_WAIT_SECONDS = 30;
+
+    private final String defaultVolume;
+    private final long minFreeBytes;
+    private final Map<String, Volume> volumes = new LinkedHashMap<>();
+    private final UploadLayout coldLayout;
+
+    public StorageVolumes(UploadLayout uploadLayout,
+                          @Value("${fotoshare.storage.default-volume:default}") String defaultVolume,
+                          @Value("${fotoshare.storage.volumes:}") String extraVolumes,
+                          @Value("${fotoshare.storage.volume-write-concurrency:4}") int writeConcurrency,
+                          @Value("${fotoshare.storage.volume-min-free:1GB}") DataSize minFree,
+                          @Value("${fotoshare.storage.draining-volumes:}") String drainingVolumes,
+                          @Value("${fotoshare.storage.cold.directory:}") String coldDirectory) {
+        this.defaultVolume = defaultVolume;
+        this.coldLayout = coldDirectory.isBlank() ? null : new UploadLayout(coldDirectory);
+        this.minFreeBytes = minFree.toBytes();
+        volumes.put(defaultVolume, new Volume(defaultVolume, uploadLayout, writeConcurrency));
+        for (String entry : extraVolumes.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.split("=", 2);
+            if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank() || volumes.containsKey(parts[0].trim())) {
+                throw new IllegalArgumentException("Volume de stockage mal configuré : " + entry);
+            }
+            String name = parts[0].trim();
+            volumes.put(name, new Volume(name, new UploadLayout(parts[1].trim()), writeConcurrency));
+        }
+        for (String name : drainingVolumes.split(",")) {
+            if (!name.isBlank()) {
+                setDraining(name.trim(), true);
+            }
+        }
+    }
+
+    // Un seul volume, sans limite d'espace libre (tests)
+    static StorageVolumes single(UploadLayout uploadLayout) {
+        return new StorageVolumes(uploadLayout, "default", "", 4, DataSize.ofBytes(0), "", "");
+    }
+
+    public String getDefaultVolume() {
+        return defaultVolume;
+    }
+
+    // null si le stockage froid n'est pas configuré
+    public UploadLayout getColdLayout() {
+        return coldLayout;
+    }
+
+    public Collection<Volume> getVolumes() {
+        return Collections.unmodifiableCollection(volumes.values());
+    }
+
+    /**
+     * Volume d'après le nom enregistré sur la photo, null étant le volume par défaut.
+     * Retourne null si ce volume ne fait plus partie de la configuration.
+     */
+    public Volume get(String volume) {
+        return volumes.get(volume != null ? volume : defaultVolume);
+    }
+
+    public void setDraining(String volume, boolean draining) {
+        Volume target = volumes.get(volume);
+        if (target == null) {
+            throw new IllegalArgumentException("Volume inconnu : " + volume);
+        }
+        target.draining = draining;
+    }
+
+    /**
+     * Choisit le volume d'un nouveau fichier de cette taille et y réserve une écriture.
+     * Si tous les volumes ont atteint leur limite d'écritures, attend qu'une se libère.
+     */
+    public VolumeReservation reserve(long size) throws IOException {
+        List<Volume> candidates = new ArrayList<>();
+        List<Long> weights = new ArrayList<>();
+        for (Volume volume : volumes.values()) {
+            long free = volume.getUsableBytes() - minFreeBytes - size;
+            // Un volume illisible (getUsableBytes = -1) est exclu comme un volume plein
+            if (!volume.draining && free > 0) {
+                candidates.add(volume);
+                weights.add(free);
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new IOException("Aucun volume de stockage disponible");
+        }
+
+        List<Volume> idle = new ArrayList<>();
+        List<Long> idleWeights = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (candidates.get(i).permits.availablePermits() > 0) {
+                idle.add(candidates.get(i));
+                idleWeights.add(weights.get(i));
+            }
+        }
+        while (!idle.isEmpty()) {
+            int chosen = pickWeighted(idleWeights);
+            Volume volume = idle.get(chosen);
+            if (volume.permits.tryAcquire()) {
+                return new VolumeReservation(volume.name, volume.permits);
+            }
+            // Dernière écriture libre prise entre-temps par une autre requête
+            idle.remove(chosen);
+            idleWeights.remove(chosen);
+        }
+
+        Volume volume = candidates.get(pickWeighted(weights));
+        try {
+            if (volume.permits.tryAcquire(WRITE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                return new VolumeReservation(volume.name, volume.permits);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new IOException("Trop d'écritures en cours sur le volume " + volume.name);
+    }
+
+    private static int pickWeighted(List<Long> weights) {
+        long total = 0;
+        for (long weight : weights) {
+            total += weight;
+        }
+        long target = ThreadLocalRandom.current().nextLong(total);
+        for (int i = 0; i < weights.size(); i++) {
+            target -= weights.get(i);
+            if (target < 0) {
+                return i;
+            }
+        }
+        return weights.size() - 1;
+    }
+
+    public static class Volume {
+
+        private final String name;
+        private final UploadLayout layout;
+        private final int writeConcurrency;
+        private final Semaphore permits;
+        private volatile boolean draining;
+
+        Volume(String name, UploadLayout layout, int writeConcurrency) {
+            this.name = name;
+            this.layout = layout;
+            this.writeConcurrency = writeConcurrency;
+            this.permits = new Semaphore(writeConcurrency);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public UploadLayout getLayout() {
+            return layout;
+        }
+
+        public boolean isDraining() {
+            return draining;
+        }
+
+        public int getWriteConcurrency() {
+            return writeConcurrency;
+        }
+
+        public int getActiveWrites() {
+            return writeConcurrency - permits.availablePermits();
+        }
+
+        // -1 si le volume est inaccessible (disque démonté, erreur d'entrée/sortie)
+        public long getUsableBytes() {
+            try {
+                return fileStore().getUsableSpace();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        public long getTotalBytes() {
+            try {
+                return fileStore().getTotalSpace();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        private FileStore fileStore() throws IOException {
+            Path root = layout.getRoot();
+            Files.createDirectories(root);
+            return Files.getFileStore(root);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package local.epul4a.fotoshare.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache mémoire des miniatures, borné en octets.
+ * Les entrées sont réparties sur plusieurs segments indépendants (chacun un LRU avec son
+ * propre verrou et sa part du budget) pour que les lectures concurrentes ne se bloquent pas.
+ * Chaque entrée garde l'ETag de la miniature : une miniature régénérée n'est jamais resservie.
+ */
+@Component
+public class ThumbnailCache {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ThumbnailCache(@Value("${fotoshare.thumbnail-cache.max-size:64MB}") DataSize maxSize) {
+        this.maxBytes = maxSize.toBytes();
+        this.maxEntryBytes = maxBytes / SEGMENT_COUNT;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public byte[] get(Long photoId, String etag) {
+        Segment segment = segmentFor(photoId);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.entries.get(photoId);
+        }
+        if (entry == null || !entry.etag.equals(etag)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.data;
+    }
+
+    public void put(Long photoId, String etag, byte[] data) {
+        if (data.length > maxEntryBytes) {
+            return;
+        }
+        Segment segment = segmentFor(photoId);
+        synchronized (segment) {
+            Entry previous = segment.entries.put(photoId, new Entry(etag, data));
+            if (previous != null) {
+                segment.bytes -= previous.data.length;
+            }
+            segment.bytes += data.length;
+
+            Iterator<Entry> eldest = segment.entries.values().iterator();
+            while (segment.bytes > maxEntryBytes && eldest.hasNext()) {
+                segment.bytes -= eldest.next().data.length;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public void invalidate(Long photoId) {
+        Segment segment = segmentFor(photoId);
+        synchronized (segment) {
+            Entry removed = segment.entries.remove(photoId);
+            if (removed != null) {
+                segment.bytes -= removed.data.length;
+            }
+        }
+    }
+
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getSizeBytes() {
+        long total = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                total += segment.bytes;
+            }
+        }
+        return total;
+    }
+
+    public int getEntryCount() {
+        int total = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                total += segment.entries.size();
+            }
+        }
+        return total;
+    }
+
+    private Segment segmentFor(Long photoId) {
+        return segments[(Long.hashCode(photoId) & Integer.MAX_VALUE) % SEGMENT_COUNT];
+    }
+
+    private static final class Segment {
+        // Ordre d'accès : le premier élément est le moins récemment utilisé
+        private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+    }
+
+    private record Entry(String etag, byte[] data) {
+    }
+}
@@ -0,0 +1,97 @@
+package local.epul4a.fotoshare.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Emplacement des fichiers dans le répertoire d'upload.
+ * Les fichiers sont répartis sur deux niveaux de sous-répertoires (ab/cd/) calculés à partir
+ * du nom de stockage de l'original : un original et toutes ses déclinaisons sont dans le même
+ * répertoire. Tant que la migration (UploadMigrationService) n'est pas terminée, un fichier
+ * peut encore se trouver à la racine : la lecture accepte les deux emplacements.
+ */
+@Component
+public class UploadLayout {
+
+    private final Path root;
+
+    public UploadLayout(@Value("${fotoshare.upload.directory:uploads}") String uploadDirectory) {
+        this.root = Paths.get(uploadDirectory);
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Emplacement d'un fichier (original ou déclinaison) pour la lecture. Le nouvel emplacement
+     * est testé en premier : un fichier déplacé entre les deux tests est retrouvé au nouvel
+     * emplacement, qui est aussi celui retourné quand le fichier n'existe nulle part.
+     */
+    public Path resolve(String storageFilename, String filename) {
+        Path sharded = shardedPath(storageFilename, filename);
+        if (Files.exists(sharded)) {
+            return sharded;
+        }
+        Path legacy = legacyPath(filename);
+        return Files.exists(legacy) ? legacy : sharded;
+    }
+
+    public Path resolve(String storageFilename) {
+        return resolve(storageFilename, storageFilename);
+    }
+
+    /**
+     * Emplacement d'un nouveau fichier, toujours dans la disposition répartie.
+     */
+    public Path prepareWrite(String storageFilename, String filename) throws IOException {
+        Path sharded = shardedPath(storageFilename, filename);
+        Files.createDirectories(sharded.getParent());
+        return sharded;
+    }
+
+    // Supprime le fichier aux deux emplacements possibles, l'ancien d'abord : un fichier déplacé
+    // par la migration entre les deux suppressions est quand même supprimé
+    public void delete(String storageFilename, String filename) throws IOException {
+        Files.deleteIfExists(legacyPath(filename));
+        Files.deleteIfExists(shardedPath(storageFilename, filename));
+    }
+
+    public Path shardedPath(String storageFilename, String filename) {
+        return root.resolve(shardOf(storageFilename)).resolve(filename);
+    }
+
+    public Path legacyPath(String filename) {
+        return root.resolve(filename);
+    }
+
+    /**
+     * Sous-répertoire (ab/cd) d'un original et de ses déclinaisons, repris comme préfixe des clés S3.
+     */
+    public static String shardOf(String storageFilename) {
+        // MD5 plutôt que le nom lui-même : les anciens noms (UUID) et les empreintes sont répartis de la même façon
+        String hash = DigestUtils.md5DigestAsHex(storageFilename.getBytes(StandardCharsets.UTF_8));
+        return hash.substring(0, 2) + "/" + hash.substring(2, 4);
+    }
+
+    /**
+     * Nom de stockage de l'original dont dépend un fichier de l'ancienne disposition :
+     * le nom lui-même pour un original, sans le préfixe pour une déclinaison (thumb_, r640_).
+     */
+    public static String storageFilenameOf(String filename) {
+        if (filename.startsWith("thumb_")) {
+            return filename.substring("thumb_".length());
+        }
+        if (filename.matches("r\\d+_.+")) {
+            return filename.substring(filename.indexOf('_') + 1);
+        }
+        return filename;
+    }
+}
@@ -0,0 +1,163 @@
+package local.epul4a.fotoshare.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Migration en ligne de l'ancienne disposition (tous les fichiers à la racine du répertoire
+ * d'upload) vers les sous-répertoires de UploadLayout. Les fichiers sont déplacés par lots,
+ * avec une pause entre deux lots pour ne pas saturer le disque ; l'application reste en service
+ * puisque la lecture cherche les fichiers aux deux emplacements. La migration peut être
+ * interrompue et relancée : seuls les fichiers restés à la racine sont traités.
+ */
+@Service
+public class UploadMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadMigrationService.class);
+
+    private final UploadLayout uploadLayout;
+
+    @Value("${fotoshare.upload.migration.batch-size:500}")
+    private int batchSize;
+
+    @Value("${fotoshare.upload.migration.pause-millis:200}")
+    private long pauseMillis;
+
+    private Thread worker;
+    private volatile boolean stopRequested;
+
+    private final AtomicLong moved = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    public UploadMigrationService(UploadLayout uploadLayout) {
+        this.uploadLayout = uploadLayout;
+    }
+
+    public synchronized void start() {
+        if (isRunning()) {
+            throw new RuntimeException("Une migration est déjà en cours");
+        }
+        stopRequested = false;
+        moved.set(0);
+        failed.set(0);
+        startedAt = LocalDateTime.now();
+        finishedAt = null;
+        worker = new Thread(this::run, "upload-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            stopRequested = true;
+            thread = worker;
+        }
+        if (thread != null) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    void run() {
+        // Fichiers impossibles à déplacer : ignorés jusqu'à la prochaine migration
+        Set<String> skipped = new HashSet<>();
+        try {
+            while (!stopRequested) {
+                List<Path> batch = nextBatch(skipped);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (Path file : batch) {
+                    if (stopRequested) {
+                        break;
+                    }
+                    migrate(file, skipped);
+                }
+                TimeUnit.MILLISECONDS.sleep(pauseMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Migration du répertoire d'upload interrompue", e);
+        } finally {
+            finishedAt = LocalDateTime.now();
+            logger.info("Migration du répertoire d'upload : {} fichier(s) déplacé(s), {} échec(s)", moved.get(), failed.get());
+        }
+    }
+
+    // Les fichiers déjà déplacés ne sont plus à la racine : chaque parcours repart du début
+    private List<Path> nextBatch(Set<String> skipped) throws IOException {
+        List<Path> batch = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(uploadLayout.getRoot())) {
+            for (Path file : stream) {
+                String filename = file.getFileName().toString();
+                // Sous-répertoires (répartition, cache) et fichiers temporaires d'upload
+                if (filename.startsWith(".") || skipped.contains(filename) || !Files.isRegularFile(file)) {
+                    continue;
+                }
+                batch.add(file);
+                if (batch.size() >= batchSize) {
+                    break;
+                }
+            }
+        }
+        return batch;
+    }
+
+    private void migrate(Path file, Set<String> skipped) {
+        String filename = file.getFileName().toString();
+        try {
+            Path target = uploadLayout.prepareWrite(UploadLayout.storageFilenameOf(filename), filename);
+            if (Files.exists(target)) {
+                // Déjà réécrit au nouvel emplacement (nouvelle génération des déclinaisons) : l'ancien est obsolète
+                Files.deleteIfExists(file);
+            } else {
+                Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            moved.incrementAndGet();
+        } catch (IOException e) {
+            logger.warn("Impossible de déplacer {}", filename, e);
+            skipped.add(filename);
+            failed.incrementAndGet();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return worker != null && worker.isAlive();
+    }
+
+    public long getMovedCount() {
+        return moved.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+}
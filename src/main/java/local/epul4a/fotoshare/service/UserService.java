@@ -1,12 +1,15 @@
 package local.epul4a.fotoshare.service;
 
+import local.epul4a.fotoshare.config.AuthenticatedUser;
 import local.epul4a.fotoshare.dto.UserRegistrationDTO;
 import local.epul4a.fotoshare.entity.User;
 import local.epul4a.fotoshare.repository.UserRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
@@ -17,10 +20,17 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserStatusVersion userStatusVersion;
+    private final PhotoAclCache aclCache;
+    private final PhotoFeedIndex feedIndex;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, UserStatusVersion userStatusVersion,
+                       PhotoAclCache aclCache, PhotoFeedIndex feedIndex) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.userStatusVersion = userStatusVersion;
+        this.aclCache = aclCache;
+        this.feedIndex = feedIndex;
     }
 
     public void registerUser(UserRegistrationDTO dto) {
@@ -54,6 +64,21 @@ public class UserService {
         return userRepository.findByUsername(username).orElse(null);
     }
 
+    /**
+     * Utilisateur connecté, d'après les informations gardées dans la session (AuthenticatedUser) :
+     * sans requête. L'objet retourné est détaché, avec seulement l'identifiant, le nom et le rôle.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public User getCurrentUser(Authentication authentication) {
+        if (authentication == null) {
+            return null;
+        }
+        if (authentication.getPrincipal() instanceof AuthenticatedUser principal) {
+            return principal.toUser();
+        }
+        return findByUsername(authentication.getName());
+    }
+
     @Transactional(readOnly = true)
     public User findById(Long id) {
         return userRepository.findById(id).orElse(null);
@@ -98,6 +123,7 @@ public class UserService {
 
         user.setRole(role);
         userRepository.save(user);
+        userStatusVersion.bump();
     }
 
     public void deleteUser(Long userId) {
@@ -109,6 +135,9 @@ public class UserService {
         }
 
         userRepository.deleteById(userId);
+        userStatusVersion.bump();
+        aclCache.invalidateAll();
+        feedIndex.invalidateAll();
     }
 
     public void toggleUserEnabled(Long userId) {
@@ -121,6 +150,7 @@ public class UserService {
 
         user.setEnabled(!user.getEnabled());
         userRepository.save(user);
+        userStatusVersion.bump();
     }
 }
 
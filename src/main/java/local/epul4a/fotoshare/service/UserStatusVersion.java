@@ -0,0 +1,40 @@
+package local.epul4a.fotoshare.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version des statuts des comptes (activation, rôle, suppression), incrémentée à chaque changement.
+ * Chaque session connue garde la version lue à sa connexion : tant qu'elle n'a pas changé,
+ * l'utilisateur connecté n'a pas besoin d'être relu en base (UserStatusFilter).
+ * La version est propre à l'instance, comme les autres caches de l'application.
+ */
+@Component
+public class UserStatusVersion {
+
+    private final AtomicLong version = new AtomicLong();
+
+    public long current() {
+        return version.get();
+    }
+
+    /**
+     * Incrémente la version après la validation de la transaction en cours : une session qui
+     * relit l'utilisateur en voyant la nouvelle version trouve forcément le nouveau statut.
+     */
+    public void bump() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            version.incrementAndGet();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                version.incrementAndGet();
+            }
+        });
+    }
+}
@@ -0,0 +1,19 @@
+package local.epul4a.fotoshare.service;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Écriture réservée sur un volume de stockage, libérée à la fermeture.
+ * volume est null pour un stockage sans volumes (S3).
+ */
+public record VolumeReservation(String volume, Semaphore permits) implements AutoCloseable {
+
+    public static final VolumeReservation NONE = new VolumeReservation(null, null);
+
+    @Override
+    public void close() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package local.epul4a.fotoshare.controller;
+
+import local.epul4a.fotoshare.service.PhotoStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests de l'envoi des fichiers image : contenu, sendfile et consommation mémoire
+ */
+@DisplayName("Tests de l'ImageResponseWriter")
+class ImageResponseWriterTest {
+
+    private static final int MB = 1024 * 1024;
+    private static final String ETAG = "\"3f2a9c\"";
+    private static final long LAST_MODIFIED = 1_735_732_800_000L;
+
+    @TempDir
+    Path tempDir;
+
+    private ImageResponseWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        writer = new ImageResponseWriter();
+    }
+
+    @Test
+    @DisplayName("Le fichier est envoyé tel quel avec le bon Content-Type et Content-Length")
+    void write_StreamsFileContent() throws IOException {
+        byte[] content = "contenu de l'image".getBytes();
+        Path file = Files.write(tempDir.resolve("photo.jpg"), content);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(file, request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("image/jpeg", response.getContentType());
+        assertEquals(content.length, response.getContentLengthLong());
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    @DisplayName("Avec le sendfile Tomcat, le corps est délégué au connecteur")
+    void write_UsesSendfileWhenSupported() throws IOException {
+        Path file = Files.write(tempDir.resolve("photo.jpg"), new byte[4096]);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.setAttribute(ImageResponseWriter.SENDFILE_SUPPORTED_ATTR, Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(file, request, response);
+
+        assertEquals(file.toAbsolutePath().toString(), request.getAttribute(ImageResponseWriter.SENDFILE_FILENAME_ATTR));
+        assertEquals(0L, request.getAttribute(ImageResponseWriter.SENDFILE_START_ATTR));
+        assertEquals(4096L, request.getAttribute(ImageResponseWriter.SENDFILE_END_ATTR));
+        assertEquals(0, response.getContentAsByteArray().length, "Aucun octet ne doit passer par la JVM");
+    }
+
+    @Test
+    @DisplayName("Fichier absent -> 404")
+    void write_Returns404_WhenFileMissing() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(tempDir.resolve("absent.jpg"), request, response);
+
+        assertEquals(404, response.getStatus());
+    }
+
+    @Test
+    @DisplayName("Fichier absent du stockage -> rien n'est écrit, l'appelant choisit le repli")
+    void writeIfPresent_WritesNothing_WhenStorageFileMissing() throws IOException {
+        PhotoStorage storage = mock(PhotoStorage.class);
+        when(storage.size(any())).thenReturn(-1L);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/thumbnail");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertFalse(writer.writeIfPresent(storage, null, "image/jpeg", ETAG, LAST_MODIFIED, request, response));
+
+        assertEquals(200, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+        verify(storage, never()).stream(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    @DisplayName("Range simple -> 206 avec uniquement les octets demandés")
+    void write_ServesSingleRange() throws IOException {
+        Path file = Files.write(tempDir.resolve("photo.jpg"), "0123456789".getBytes());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.addHeader("Range", "bytes=2-5");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(file, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+        assertEquals(4, response.getContentLengthLong());
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("Range suffixe -> derniers octets du fichier")
+    void write_ServesSuffixRange() throws IOException {
+        Path file = Files.write(tempDir.resolve("photo.jpg"), "0123456789".getBytes());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.addHeader("Range", "bytes=-3");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(file, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 7-9/10", response.getHeader("Content-Range"));
+        assertEquals("789", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("Plusieurs plages -> 206 multipart/byteranges")
+    void write_ServesMultipleRanges() throws IOException {
+        Path file = Files.write(tempDir.resolve("photo.jpg"), "0123456789".getBytes());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.addHeader("Range", "bytes=0-1,8-9");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(file, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+        String body = response.getContentAsString();
+        assertTrue(body.contains("Content-Range: bytes 0-1/10\r\n\r\n01"));
+        assertTrue(body.contains("Content-Range: bytes 8-9/10\r\n\r\n89"));
+        assertEquals(body.length(), response.getContentLengthLong());
+    }
+
+    @Test
+    @DisplayName("Plage hors du fichier -> 416")
+    void write_Returns416_WhenRangeNotSatisfiable() throws IOException {
+        Path file = Files.write(tempDir.resolve("photo.jpg"), "0123456789".getBytes());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.addHeader("Range", "bytes=20-30");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(file, request, response);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    @DisplayName("Plusieurs plages dont une après la fin du fichier -> 416")
+    void write_Returns416_WhenOneOfSeveralRangesStartsPastEnd() throws IOException {
+        Path file = Files.write(tempDir.resolve("photo.jpg"), "0123456789".getBytes());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.addHeader("Range", "bytes=0-1,20-30");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(file, request, response);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    @DisplayName("Fichier vide -> toute plage est refusée")
+    void write_Returns416_WhenFileEmpty() throws IOException {
+        Path file = Files.write(tempDir.resolve("empty.jpg"), new byte[0]);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.addHeader("Range", "bytes=-5");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(file, request, response);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */0", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    @DisplayName("If-Range obsolète -> fichier complet en 200")
+    void write_IgnoresRange_WhenIfRangeDoesNotMatch() throws IOException {
+        Path file = Files.write(tempDir.resolve("photo.jpg"), "0123456789".getBytes());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.addHeader("Range", "bytes=2-5");
+        request.addHeader("If-Range", DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                Instant.ofEpochMilli(LAST_MODIFIED - 60_000).atZone(ZoneOffset.UTC)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(file, request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("If-Range avec l'ETag courant -> 206")
+    void write_ServesRange_WhenIfRangeMatchesEtag() throws IOException {
+        Path file = Files.write(tempDir.resolve("photo.jpg"), "0123456789".getBytes());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.addHeader("Range", "bytes=0-3");
+        request.addHeader("If-Range", ETAG);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(file, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("0123", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("If-None-Match identique -> 304 sans lire le fichier")
+    void checkNotModified_Returns304_WithoutFileAccess() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.addHeader("If-None-Match", ETAG);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean notModified = writer.checkNotModified(ETAG, LAST_MODIFIED, "private, no-cache", request, response);
+
+        assertTrue(notModified);
+        assertEquals(304, response.getStatus());
+        assertEquals(ETAG, response.getHeader("ETag"));
+        assertEquals("private, no-cache", response.getHeader("Cache-Control"));
+    }
+
+    @Test
+    @DisplayName("ETag différent -> la réponse complète doit être envoyée")
+    void checkNotModified_ReturnsFalse_WhenEtagChanged() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.addHeader("If-None-Match", "\"ancien\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        boolean notModified = writer.checkNotModified(ETAG, LAST_MODIFIED, "public, no-cache", request, response);
+
+        assertFalse(notModified);
+        assertEquals(200, response.getStatus());
+        assertEquals(ETAG, response.getHeader("ETag"));
+    }
+
+    @Test
+    @DisplayName("Range avec sendfile -> bornes transmises au connecteur")
+    void write_UsesSendfileForSingleRange() throws IOException {
+        Path file = Files.write(tempDir.resolve("photo.jpg"), new byte[4096]);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/image");
+        request.addHeader("Range", "bytes=1024-");
+        request.setAttribute(ImageResponseWriter.SENDFILE_SUPPORTED_ATTR, Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        write(file, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals(1024L, request.getAttribute(ImageResponseWriter.SENDFILE_START_ATTR));
+        assertEquals(4096L, request.getAttribute(ImageResponseWriter.SENDFILE_END_ATTR));
+    }
+
+    @Test
+    @DisplayName("La mémoire allouée par envoi ne dépend pas de la taille de l'image")
+    void copyRange_AllocationIsIndependentOfFileSize() throws IOException {
+        Path small = createFile("small.bin", MB);
+        Path large = createFile("large.bin", 32 * MB);
+
+        // Préchauffage (chargement des classes, tampons internes du JDK)
+        for (int i = 0; i < 5; i++) {
+            ImageResponseWriter.copyRange(small, 0, Files.size(small), OutputStream.nullOutputStream());
+        }
+
+        long smallAllocated = allocatedBytesDuringCopy(small);
+        long largeAllocated = allocatedBytesDuringCopy(large);
+
+        assertTrue(largeAllocated < 256 * 1024,
+                "Envoyer 32 Mo ne doit pas allouer plus de quelques tampons (alloué : " + largeAllocated + " octets)");
+        assertTrue(largeAllocated < smallAllocated + 64 * 1024,
+                "L'allocation doit rester constante (1 Mo : " + smallAllocated + ", 32 Mo : " + largeAllocated + ")");
+    }
+
+    private void write(Path file, MockHttpServletRequest request, MockHttpServletResponse response) throws IOException {
+        writer.write(file, "image/jpeg", ETAG, LAST_MODIFIED, request, response);
+    }
+
+    private long allocatedBytesDuringCopy(Path file) throws IOException {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        ImageResponseWriter.copyRange(file, 0, Files.size(file), OutputStream.nullOutputStream());
+        return threadBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private Path createFile(String name, int size) throws IOException {
+        Path file = tempDir.resolve(name);
+        byte[] chunk = new byte[MB];
+        Arrays.fill(chunk, (byte) 0x5A);
+        for (int written = 0; written < size; written += chunk.length) {
+            Files.write(file, chunk, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,136 @@
+package local.epul4a.fotoshare.integration;
+
+import local.epul4a.fotoshare.dto.PhotoDTO;
+import local.epul4a.fotoshare.dto.PhotoUploadDTO;
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.entity.User;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.UserRepository;
+import local.epul4a.fotoshare.service.PhotoService;
+import local.epul4a.fotoshare.service.UploadLayout;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test d'intégration : génération des miniatures en arrière-plan
+ * Vérifie : upload rendu PENDING -> image d'attente servie -> miniature READY générée par le pool
+ * Non transactionnel : le worker doit pouvoir relire la photo commitée.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@DisplayName("Tests d'intégration - Génération asynchrone des miniatures")
+class AsyncRenditionIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UploadLayout uploadLayout;
+
+    private User testUser;
+    private final List<Photo> createdPhotos = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        testUser = new User();
+        testUser.setUsername("testrendition");
+        testUser.setEmail("testrendition@example.com");
+        testUser.setPasswordHash("hashedpassword");
+        testUser.setRole(User.Role.USER);
+        testUser.setEnabled(true);
+        testUser = userRepository.save(testUser);
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        for (Photo photo : createdPhotos) {
+            photoRepository.deleteById(photo.getId());
+            uploadLayout.delete(photo.getStorageFilename(), photo.getStorageFilename());
+            uploadLayout.delete(photo.getStorageFilename(), "thumb_" + photo.getStorageFilename());
+        }
+        userRepository.delete(testUser);
+    }
+
+    @Test
+    @DisplayName("L'upload rend la main avant la miniature, qui est ensuite générée par le pool")
+    void uploadPhoto_GeneratesThumbnailInBackground() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "test-async.jpg", "image/jpeg", createJpeg());
+        PhotoUploadDTO dto = new PhotoUploadDTO();
+        dto.setTitle("Photo asynchrone");
+        dto.setVisibility("PRIVATE");
+        dto.setFile(file);
+
+        PhotoDTO uploaded = photoService.uploadPhoto(dto, testUser);
+        Photo photo = photoRepository.findById(uploaded.getId()).orElseThrow();
+        createdPhotos.add(photo);
+
+        assertNull(uploaded.getThumbnailFilename(), "La miniature ne doit pas être générée pendant l'upload");
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (photo.getProcessingStatus() == Photo.ProcessingStatus.PENDING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            photo = photoRepository.findById(uploaded.getId()).orElseThrow();
+        }
+
+        assertEquals(Photo.ProcessingStatus.READY, photo.getProcessingStatus());
+        assertEquals("thumb_" + photo.getStorageFilename(), photo.getThumbnailFilename());
+        assertTrue(Files.exists(uploadLayout.resolve(photo.getStorageFilename(), photo.getThumbnailFilename())));
+    }
+
+    @Test
+    @DisplayName("Miniature en attente -> image de remplacement jamais mise en cache")
+    void getThumbnail_ServesPlaceholder_WhilePending() throws Exception {
+        Photo photo = new Photo();
+        photo.setTitle("En attente");
+        photo.setStorageFilename("test-pending-" + System.nanoTime() + ".jpg");
+        photo.setContentType("image/jpeg");
+        photo.setVisibility(Photo.Visibility.PRIVATE);
+        photo.setProcessingStatus(Photo.ProcessingStatus.PENDING);
+        photo.setOwner(testUser);
+        createdPhotos.add(photoRepository.save(photo));
+
+        mockMvc.perform(get("/photos/" + photo.getId() + "/thumbnail").with(user("testrendition")))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/svg+xml"))
+                .andExpect(header().string("Cache-Control", "no-store"));
+    }
+
+    private byte[] createJpeg() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB), "jpg", out);
+        return out.toByteArray();
+    }
+}
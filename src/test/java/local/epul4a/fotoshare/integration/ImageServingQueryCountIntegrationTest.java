@@ -0,0 +1,176 @@
+package local.epul4a.fotoshare.integration;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.entity.Share;
+import local.epul4a.fotoshare.entity.User;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.ShareRepository;
+import local.epul4a.fotoshare.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test d'intégration : nombre de requêtes SQL par image servie
+ * Vérifie : autorisation + métadonnées résolues en une seule requête, quel que soit le cas d'accès
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Transactional
+@DisplayName("Tests d'intégration - Requêtes SQL par image")
+class ImageServingQueryCountIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private ShareRepository shareRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${fotoshare.upload.directory:uploads}")
+    private String uploadDirectory;
+
+    private Statistics statistics;
+    private Photo privatePhoto;
+    private Photo publicPhoto;
+    private Path imageFile;
+    private Path thumbnailFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        User owner = createUser("qc-owner");
+        User friend = createUser("qc-friend");
+        createUser("qc-stranger");
+
+        Path uploadPath = Paths.get(uploadDirectory);
+        Files.createDirectories(uploadPath);
+        imageFile = Files.write(uploadPath.resolve("test-qc-image.jpg"), "image".getBytes());
+        thumbnailFile = Files.write(uploadPath.resolve("test-qc-thumb.jpg"), "thumb".getBytes());
+
+        privatePhoto = createPhoto(owner, Photo.Visibility.PRIVATE, "test-qc-image.jpg", "test-qc-thumb.jpg");
+        publicPhoto = createPhoto(owner, Photo.Visibility.PUBLIC, "test-qc-image-public.jpg", "test-qc-thumb.jpg");
+
+        Share share = new Share();
+        share.setPhoto(privatePhoto);
+        share.setUser(friend);
+        share.setPermissionLevel(Share.PermissionLevel.READ);
+        shareRepository.save(share);
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        Files.deleteIfExists(imageFile);
+        Files.deleteIfExists(thumbnailFile);
+    }
+
+    @Test
+    @DisplayName("Miniature d'une photo partagée : une seule requête SQL")
+    void sharedThumbnail_UsesSingleQuery() throws Exception {
+        statistics.clear();
+
+        mockMvc.perform(get("/photos/{id}/thumbnail", privatePhoto.getId()).with(user("qc-friend")))
+                .andExpect(status().isOk());
+
+        assertQueryCountAtMostOne();
+    }
+
+    @Test
+    @DisplayName("Image du propriétaire : une seule requête SQL")
+    void ownerImage_UsesSingleQuery() throws Exception {
+        statistics.clear();
+
+        mockMvc.perform(get("/photos/{id}/image", privatePhoto.getId()).with(user("qc-owner")))
+                .andExpect(status().isOk());
+
+        assertQueryCountAtMostOne();
+    }
+
+    @Test
+    @DisplayName("Miniature publique en anonyme : une seule requête SQL")
+    void anonymousPublicThumbnail_UsesSingleQuery() throws Exception {
+        statistics.clear();
+
+        mockMvc.perform(get("/photos/{id}/thumbnail", publicPhoto.getId()))
+                .andExpect(status().isOk());
+
+        assertQueryCountAtMostOne();
+    }
+
+    @Test
+    @DisplayName("Accès refusé : une seule requête SQL et 403")
+    void strangerImage_IsForbidden_WithSingleQuery() throws Exception {
+        statistics.clear();
+
+        mockMvc.perform(get("/photos/{id}/image", privatePhoto.getId()).with(user("qc-stranger")))
+                .andExpect(status().isForbidden());
+
+        assertQueryCountAtMostOne();
+    }
+
+    private void assertQueryCountAtMostOne() {
+        assertTrue(statistics.getPrepareStatementCount() <= 1,
+                "Une image doit être servie avec au plus 1 requête SQL (exécutées : " + statistics.getPrepareStatementCount() + ")");
+    }
+
+    private User createUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPasswordHash("hashedpassword");
+        user.setRole(User.Role.USER);
+        user.setEnabled(true);
+        return userRepository.save(user);
+    }
+
+    private Photo createPhoto(User owner, Photo.Visibility visibility, String storageFilename, String thumbnailFilename) {
+        Photo photo = new Photo();
+        photo.setTitle("Photo " + visibility);
+        photo.setOriginalFilename("photo.jpg");
+        photo.setStorageFilename(storageFilename);
+        photo.setThumbnailFilename(thumbnailFilename);
+        photo.setContentType("image/jpeg");
+        photo.setFileSize(5L);
+        photo.setVisibility(visibility);
+        photo.setOwner(owner);
+        return photoRepository.save(photo);
+    }
+}
@@ -0,0 +1,164 @@
+package local.epul4a.fotoshare.integration;
+
+import local.epul4a.fotoshare.dto.PhotoCursor;
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.entity.User;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.UserRepository;
+import local.epul4a.fotoshare.service.PhotoFeedIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Banc d'essai des fils de photos paginés par curseur : la page 100 doit coûter autant que la première,
+ * et le fil « toutes les photos » est mesuré par la requête SQL (OR / EXISTS) et par l'index mémoire
+ * suivi du chargement des métadonnées de la page. Désactivé par défaut, à lancer avec
+ * mvn test -Dtest=PhotoFeedBenchmarkIntegrationTest -Dfotoshare.benchmark=true [-Dfotoshare.benchmark.photos=1000000]
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "fotoshare.benchmark", matches = "true")
+@DisplayName("Banc d'essai - Fil des photos accessibles")
+class PhotoFeedBenchmarkIntegrationTest {
+
+    private static final int PAGE_SIZE = 24;
+    private static final int BATCH_SIZE = 10_000;
+    private static final int ITERATIONS = 20;
+    private static final int DEEP_PAGE = 100;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private PhotoFeedIndex feedIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnly;
+    private User reader;
+    private User other;
+
+    @BeforeEach
+    void setUp() {
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        reader = createUser("bench-reader");
+        other = createUser("bench-other");
+
+        // 10 % de photos publiques ; le lecteur possède 1 % des photos et 1 % lui sont partagées
+        int photoCount = Integer.getInteger("fotoshare.benchmark.photos", 1_000_000);
+        for (int start = 0; start < photoCount; start += BATCH_SIZE) {
+            List<Object[]> rows = new ArrayList<>();
+            for (int i = start; i < Math.min(start + BATCH_SIZE, photoCount); i++) {
+                Long ownerId = i % 100 == 0 ? reader.getId() : other.getId();
+                String visibility = i % 10 == 3 ? "PUBLIC" : "PRIVATE";
+                rows.add(new Object[]{"Photo " + i, "bench-" + i + ".jpg", "image/jpeg", visibility, ownerId});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO photo (title, storage_filename, content_type, visibility, owner_id, " +
+                    "processing_status, storage_tier, access_count, created_at) " +
+                    "VALUES (?, ?, ?, ?, ?, 'READY', 'HOT', 0, CURRENT_TIMESTAMP)", rows);
+        }
+        jdbcTemplate.update("INSERT INTO partage (photo_id, user_id, permission_level, created_at) " +
+                "SELECT id, ?, 'READ', CURRENT_TIMESTAMP FROM photo WHERE owner_id = ? AND MOD(id, 100) = 50",
+                reader.getId(), other.getId());
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM partage WHERE user_id = ?", reader.getId());
+        jdbcTemplate.update("DELETE FROM photo WHERE owner_id IN (?, ?)", reader.getId(), other.getId());
+        userRepository.deleteAllById(List.of(reader.getId(), other.getId()));
+        feedIndex.invalidateAll();
+    }
+
+    @Test
+    @DisplayName("Fils par curseur : page 1 contre page 100, SQL contre index mémoire")
+    void compareFirstAndDeepPages() {
+        // Chaque fil rend les identifiants d'une page à partir du curseur (createdAt, id) de la précédente
+        Map<String, Function<PhotoCursor, List<Photo>>> feeds = new LinkedHashMap<>();
+        feeds.put("Toutes (SQL)", cursor -> photoRepository
+                .findAccessiblePhotosBefore(reader, cursor.id(), PageRequest.of(0, PAGE_SIZE)).getContent());
+        feeds.put("Toutes (index)", cursor -> photoRepository
+                .findWithOwnerByIdIn(feedIndex.slice(reader.getId(), cursor.id(), PAGE_SIZE).getContent()).stream()
+                .sorted(Comparator.comparing(Photo::getId).reversed()).toList());
+        // Première page sans condition de curseur, comme dans PhotoService
+        feeds.put("Publiques", cursor -> (cursor.isFirst()
+                ? photoRepository.findLatestByVisibility(Photo.Visibility.PUBLIC, PageRequest.of(0, PAGE_SIZE))
+                : photoRepository.findByVisibilityBefore(Photo.Visibility.PUBLIC, cursor.createdAt(), cursor.id(), PageRequest.of(0, PAGE_SIZE))).getContent());
+        feeds.put("Mes photos", cursor -> (cursor.isFirst()
+                ? photoRepository.findLatestByOwner(reader, PageRequest.of(0, PAGE_SIZE))
+                : photoRepository.findByOwnerBefore(reader, cursor.createdAt(), cursor.id(), PageRequest.of(0, PAGE_SIZE))).getContent());
+        feeds.put("Partagées", cursor -> (cursor.isFirst()
+                ? photoRepository.findLatestSharedWithUser(reader, PageRequest.of(0, PAGE_SIZE))
+                : photoRepository.findSharedWithUserBefore(reader, cursor.createdAt(), cursor.id(), PageRequest.of(0, PAGE_SIZE))).getContent());
+
+        List<Long> sqlDeepPage = null;
+        for (Map.Entry<String, Function<PhotoCursor, List<Photo>>> feed : feeds.entrySet()) {
+            Function<PhotoCursor, List<Photo>> query = cursor -> readOnly.execute(status -> feed.getValue().apply(cursor));
+            PhotoCursor deepCursor = PhotoCursor.FIRST;
+            for (int page = 1; page < DEEP_PAGE; page++) {
+                List<Photo> photos = query.apply(deepCursor);
+                Photo last = photos.get(photos.size() - 1);
+                deepCursor = new PhotoCursor(last.getCreatedAt(), last.getId());
+            }
+            List<Long> deepPage = query.apply(deepCursor).stream().map(Photo::getId).toList();
+            assertEquals(PAGE_SIZE, deepPage.size(), feed.getKey());
+            if (feed.getKey().startsWith("Toutes")) {
+                // L'index et la requête SQL parcourent le fil complet dans le même ordre
+                if (sqlDeepPage != null) {
+                    assertEquals(sqlDeepPage, deepPage);
+                }
+                sqlDeepPage = deepPage;
+            }
+
+            System.out.printf("%s : page 1 %.2f ms, page %d %.2f ms%n", feed.getKey(),
+                    averageMillis(query, PhotoCursor.FIRST), DEEP_PAGE, averageMillis(query, deepCursor));
+        }
+    }
+
+    private static double averageMillis(Function<PhotoCursor, List<Photo>> query, PhotoCursor cursor) {
+        query.apply(cursor);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            query.apply(cursor);
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS;
+    }
+
+    private User createUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPasswordHash("hashedpassword");
+        user.setRole(User.Role.USER);
+        user.setEnabled(true);
+        return userRepository.save(user);
+    }
+}
@@ -5,8 +5,10 @@ import local.epul4a.fotoshare.dto.PhotoUploadDTO;
 import local.epul4a.fotoshare.entity.Photo;
 import local.epul4a.fotoshare.entity.User;
 import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.StoredFileRepository;
 import local.epul4a.fotoshare.repository.UserRepository;
 import local.epul4a.fotoshare.service.PhotoService;
+import local.epul4a.fotoshare.service.UploadLayout;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -18,7 +20,11 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -45,6 +51,12 @@ class PhotoUploadIntegrationTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private StoredFileRepository storedFileRepository;
+
+    @Autowired
+    private UploadLayout uploadLayout;
+
     @Value("${fotoshare.upload.directory:uploads}")
     private String uploadDirectory;
 
@@ -119,7 +131,7 @@ class PhotoUploadIntegrationTest {
         String storageFilename = uploadedPhoto.getStorageFilename();
         assertNotNull(storageFilename, "Le nom de fichier de stockage doit être défini");
         
-        Path uploadedFilePath = uploadPath.resolve(storageFilename);
+        Path uploadedFilePath = uploadLayout.resolve(storageFilename);
         assertTrue(Files.exists(uploadedFilePath), 
                 "Le fichier doit exister sur le disque : " + uploadedFilePath);
         
@@ -151,7 +163,7 @@ class PhotoUploadIntegrationTest {
                 "file",
                 "test-photo.png",
                 "image/png",
-                createTestImageContent()
+                createTestImageContent("png")
         );
 
         PhotoUploadDTO pngUploadDTO = new PhotoUploadDTO();
@@ -164,9 +176,10 @@ class PhotoUploadIntegrationTest {
         
         assertNotNull(pngPhoto);
         assertEquals("test-photo.png", pngPhoto.getOriginalFilename());
+        assertEquals("image/png", pngPhoto.getContentType());
         
         // Vérifier sur disque
-        Path pngPath = uploadPath.resolve(pngPhoto.getStorageFilename());
+        Path pngPath = uploadLayout.resolve(pngPhoto.getStorageFilename());
         assertTrue(Files.exists(pngPath));
         
         // Nettoyage
@@ -181,7 +194,7 @@ class PhotoUploadIntegrationTest {
                 "file",
                 "photo1.jpg",
                 "image/jpeg",
-                "Photo 1 content".getBytes()
+                createTestImageContent()
         );
         PhotoUploadDTO dto1 = createUploadDTO("Photo 1", "Description 1", file1);
         PhotoDTO photo1 = photoService.uploadPhoto(dto1, testUser);
@@ -191,7 +204,7 @@ class PhotoUploadIntegrationTest {
                 "file",
                 "photo2.jpg",
                 "image/jpeg",
-                "Photo 2 content".getBytes()
+                createTestImageContent("jpg", 0xFFFFFF)
         );
         PhotoUploadDTO dto2 = createUploadDTO("Photo 2", "Description 2", file2);
         PhotoDTO photo2 = photoService.uploadPhoto(dto2, testUser);
@@ -204,8 +217,8 @@ class PhotoUploadIntegrationTest {
                 "Les noms de fichiers de stockage doivent être uniques");
 
         // Vérifier que les deux fichiers existent
-        Path path1 = uploadPath.resolve(photo1.getStorageFilename());
-        Path path2 = uploadPath.resolve(photo2.getStorageFilename());
+        Path path1 = uploadLayout.resolve(photo1.getStorageFilename());
+        Path path2 = uploadLayout.resolve(photo2.getStorageFilename());
         assertTrue(Files.exists(path1), "Le premier fichier doit exister");
         assertTrue(Files.exists(path2), "Le second fichier doit exister");
 
@@ -244,25 +257,25 @@ class PhotoUploadIntegrationTest {
         assertEquals(Photo.Visibility.PUBLIC, photoInDb.getVisibility());
 
         // Nettoyage
-        Path uploadedPath = uploadPath.resolve(uploadedPhoto.getStorageFilename());
+        Path uploadedPath = uploadLayout.resolve(uploadedPhoto.getStorageFilename());
         Files.deleteIfExists(uploadedPath);
     }
 
     @Test
-    @DisplayName("Test que le nom de fichier de stockage est unique (UUID)")
-    void testStorageFilenameIsUnique() throws IOException {
+    @DisplayName("Test que le nom de fichier de stockage dépend du contenu et non du nom original")
+    void testStorageFilenameIsContentAddressed() throws IOException {
         MockMultipartFile file1 = new MockMultipartFile(
                 "file",
                 "same-name.jpg",
                 "image/jpeg",
-                "Content 1".getBytes()
+                createTestImageContent()
         );
-        
+
         MockMultipartFile file2 = new MockMultipartFile(
                 "file",
                 "same-name.jpg",  // Même nom original
                 "image/jpeg",
-                "Content 2".getBytes()
+                createTestImageContent("jpg", 0xFFFFFF)
         );
 
         PhotoUploadDTO dto1 = createUploadDTO("Photo A", "Description A", file1);
@@ -273,21 +286,46 @@ class PhotoUploadIntegrationTest {
 
         // Les noms de stockage doivent être différents même si le nom original est le même
         assertNotEquals(photo1.getStorageFilename(), photo2.getStorageFilename(),
-                "Les noms de fichiers de stockage doivent être uniques");
-        
+                "Deux contenus différents doivent avoir des noms de stockage différents");
+        assertTrue(photo1.getStorageFilename().matches("[0-9a-f]{64}\\.jpg"),
+                "Le nom de stockage doit être l'empreinte SHA-256 du contenu");
+
         assertEquals("same-name.jpg", photo1.getOriginalFilename());
         assertEquals("same-name.jpg", photo2.getOriginalFilename());
 
         // Nettoyage
-        Files.deleteIfExists(uploadPath.resolve(photo1.getStorageFilename()));
-        Files.deleteIfExists(uploadPath.resolve(photo2.getStorageFilename()));
+        Files.deleteIfExists(uploadLayout.resolve(photo1.getStorageFilename()));
+        Files.deleteIfExists(uploadLayout.resolve(photo2.getStorageFilename()));
+    }
+
+    @Test
+    @DisplayName("Test dédoublonnage : un contenu renvoyé partage le fichier, supprimé avec la dernière photo")
+    void testDuplicateUploadSharesStoredFile() throws IOException {
+        byte[] content = createTestImageContent("jpg", 0x336699);
+
+        PhotoDTO photo1 = photoService.uploadPhoto(
+                createUploadDTO("Original", "Test", new MockMultipartFile("file", "IMG_0001.jpg", "image/jpeg", content)), testUser);
+        PhotoDTO photo2 = photoService.uploadPhoto(
+                createUploadDTO("Renvoi", "Test", new MockMultipartFile("file", "IMG_0001(1).jpg", "image/jpeg", content)), testUser);
+
+        assertNotEquals(photo1.getId(), photo2.getId());
+        assertEquals(photo1.getStorageFilename(), photo2.getStorageFilename(), "Le contenu identique doit être stocké une seule fois");
+        String contentHash = photoRepository.findById(photo1.getId()).orElseThrow().getContentHash();
+        assertEquals(2, storedFileRepository.findById(contentHash).orElseThrow().getRefCount());
+
+        Path storedPath = uploadLayout.resolve(photo1.getStorageFilename());
+        photoService.deletePhoto(photo1.getId(), testUser);
+        assertTrue(Files.exists(storedPath), "Le fichier est encore utilisé par la seconde photo");
+
+        photoService.deletePhoto(photo2.getId(), testUser);
+        assertFalse(Files.exists(storedPath), "Le fichier doit être supprimé avec sa dernière référence");
     }
 
     @Test
     @DisplayName("Test récupération du fichier après upload")
     void testRetrieveFileAfterUpload() throws IOException {
         // Upload
-        byte[] originalContent = "Test file content for retrieval".getBytes();
+        byte[] originalContent = createTestImageContent();
         MockMultipartFile file = new MockMultipartFile(
                 "file",
                 "retrieve-test.jpg",
@@ -298,18 +336,55 @@ class PhotoUploadIntegrationTest {
         PhotoUploadDTO uploadDTO = createUploadDTO("Photo à récupérer", "Test", file);
         PhotoDTO uploadedPhoto = photoService.uploadPhoto(uploadDTO, testUser);
 
-        byte[] retrievedContent = photoService.getPhotoFile(uploadedPhoto.getId());
+        byte[] retrievedContent;
+        try (InputStream in = photoService.openPhoto(uploadedPhoto.getId())) {
+            retrievedContent = in.readAllBytes();
+        }
 
         assertArrayEquals(originalContent, retrievedContent,
                 "Le contenu récupéré doit correspondre au contenu original");
 
-        Files.deleteIfExists(uploadPath.resolve(uploadedPhoto.getStorageFilename()));
+        Files.deleteIfExists(uploadLayout.resolve(uploadedPhoto.getStorageFilename()));
+    }
+
+    @Test
+    @DisplayName("Test refus d'un fichier dont le contenu n'est pas une image")
+    void testUploadRejectsNonImageContent() throws IOException {
+        MockMultipartFile file = new MockMultipartFile(
+                "file",
+                "fake-photo.jpg",
+                "image/jpeg",
+                "Ceci n'est pas une image".getBytes()
+        );
+        PhotoUploadDTO uploadDTO = createUploadDTO("Fausse photo", "Test", file);
+        long photosBefore = photoRepository.count();
+
+        assertThrows(IllegalArgumentException.class, () -> photoService.uploadPhoto(uploadDTO, testUser));
+
+        assertEquals(photosBefore, photoRepository.count(), "Aucune photo ne doit être enregistrée");
+        try (var stream = Files.list(uploadPath)) {
+            assertTrue(stream.noneMatch(path -> path.getFileName().toString().startsWith(".upload-")),
+                    "Aucun fichier temporaire ne doit rester dans le répertoire d'upload");
+        }
     }
 
     // ===== Méthodes utilitaires =====
 
-    private byte[] createTestImageContent() {
-        return "Test image content with some binary-like data...".getBytes();
+    private byte[] createTestImageContent() throws IOException {
+        return createTestImageContent("jpg");
+    }
+
+    private byte[] createTestImageContent(String format) throws IOException {
+        return createTestImageContent(format, 0x000000);
+    }
+
+    // Une couleur différente donne un contenu (et donc un nom de stockage) différent
+    private byte[] createTestImageContent(String format, int rgb) throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, rgb);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
     }
 
     private PhotoUploadDTO createUploadDTO(String title, String description, MockMultipartFile file) {
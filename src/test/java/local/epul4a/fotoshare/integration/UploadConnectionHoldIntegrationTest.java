@@ -0,0 +1,189 @@
+package local.epul4a.fotoshare.integration;
+
+import local.epul4a.fotoshare.dto.PhotoDTO;
+import local.epul4a.fotoshare.dto.PhotoUploadDTO;
+import local.epul4a.fotoshare.entity.User;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.UserRepository;
+import local.epul4a.fotoshare.service.PhotoService;
+import local.epul4a.fotoshare.service.UploadLayout;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.imageio.ImageIO;
+import javax.sql.DataSource;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test d'intégration : pendant un upload, une connexion JDBC n'est empruntée au pool que
+ * le temps des requêtes SQL, jamais pendant l'écriture du fichier ou le calcul de la miniature.
+ * Volontairement non transactionnel : une transaction de test retiendrait la connexion.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@DisplayName("Tests d'intégration - Durée d'emprunt des connexions à l'upload")
+class UploadConnectionHoldIntegrationTest {
+
+    private static final Queue<Long> HOLD_TIMES_NANOS = new ConcurrentLinkedQueue<>();
+
+    @TestConfiguration
+    static class ConnectionTimingConfig {
+
+        @Bean
+        static BeanPostProcessor connectionTimingPostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource) {
+                        return new TimingDataSource(dataSource);
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UploadLayout uploadLayout;
+
+    private User testUser;
+    private final List<PhotoDTO> uploaded = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        testUser = new User();
+        testUser.setUsername("testholdtime");
+        testUser.setEmail("testholdtime@example.com");
+        testUser.setPasswordHash("hashedpassword");
+        testUser.setRole(User.Role.USER);
+        testUser.setEnabled(true);
+        testUser = userRepository.save(testUser);
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        for (PhotoDTO photo : uploaded) {
+            photoRepository.deleteById(photo.getId());
+            uploadLayout.delete(photo.getStorageFilename(), photo.getStorageFilename());
+            uploadLayout.delete(photo.getStorageFilename(), "thumb_" + photo.getStorageFilename());
+        }
+        userRepository.delete(testUser);
+    }
+
+    @Test
+    @DisplayName("La durée d'emprunt d'une connexion ne dépend pas de la taille de l'image")
+    void uploadPhoto_HoldsConnectionsOnlyForSqlStatements() throws IOException {
+        // Préchauffage : chargement des classes ImageIO et des requêtes Hibernate
+        upload("test-warmup.jpg", createJpeg(64, 48));
+        byte[] largeImage = createJpeg(4000, 3000);
+
+        HOLD_TIMES_NANOS.clear();
+        long start = System.nanoTime();
+        upload("test-large.jpg", largeImage);
+        long uploadNanos = System.nanoTime() - start;
+
+        long maxHoldNanos = HOLD_TIMES_NANOS.stream().mapToLong(Long::longValue).max().orElse(0);
+        long totalHoldNanos = HOLD_TIMES_NANOS.stream().mapToLong(Long::longValue).sum();
+
+        assertFalse(HOLD_TIMES_NANOS.isEmpty(), "L'upload doit passer par le pool de connexions");
+        assertTrue(maxHoldNanos < 250_000_000L,
+                "Aucune connexion ne doit être retenue pendant le traitement de l'image (max : "
+                        + maxHoldNanos / 1_000_000 + " ms)");
+        assertTrue(totalHoldNanos < uploadNanos / 2,
+                "L'essentiel de l'upload doit se faire sans connexion (connexions : " + totalHoldNanos / 1_000_000
+                        + " ms, upload : " + uploadNanos / 1_000_000 + " ms)");
+    }
+
+    private void upload(String filename, byte[] content) throws IOException {
+        MockMultipartFile file = new MockMultipartFile("file", filename, "image/jpeg", content);
+
+        PhotoUploadDTO dto = new PhotoUploadDTO();
+        dto.setTitle(filename);
+        dto.setDescription("Test durée de connexion");
+        dto.setVisibility("PRIVATE");
+        dto.setFile(file);
+
+        uploaded.add(photoService.uploadPhoto(dto, testUser));
+    }
+
+    private byte[] createJpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Mesure le temps entre l'emprunt d'une connexion et sa restitution au pool
+     */
+    static class TimingDataSource extends DelegatingDataSource {
+
+        TimingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return timed(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return timed(super.getConnection(username, password));
+        }
+
+        private Connection timed(Connection connection) {
+            long borrowedAt = System.nanoTime();
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if ("close".equals(method.getName())) {
+                            HOLD_TIMES_NANOS.add(System.nanoTime() - borrowedAt);
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package local.epul4a.fotoshare.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du cache disque des images générées à la demande
+ */
+@DisplayName("Tests du DerivedImageCache")
+class DerivedImageCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Des requêtes concurrentes sur une variante absente ne la génèrent qu'une fois")
+    void getOrCreate_CoalescesConcurrentGenerations() throws Exception {
+        DerivedImageCache cache = new DerivedImageCache(tempDir.toString(), DataSize.ofMegabytes(1));
+        AtomicInteger generations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int clients = 16;
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<DerivedImageCache.Lease>> results = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            results.add(pool.submit(() -> cache.getOrCreate("1-abc.jpg", out -> {
+                generations.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                out.write(new byte[100]);
+            })));
+        }
+        // Laisse les requêtes s'accumuler derrière la génération en cours
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<DerivedImageCache.Lease> result : results) {
+            try (DerivedImageCache.Lease lease = result.get(5, TimeUnit.SECONDS)) {
+                assertEquals(100, Files.size(lease.path()));
+            }
+        }
+        pool.shutdown();
+        assertEquals(1, generations.get());
+        assertEquals(clients - 1, cache.getCoalesced() + cache.getHits());
+    }
+
+    @Test
+    @DisplayName("Le budget disque est respecté en supprimant la variante la moins récemment utilisée")
+    void getOrCreate_EvictsLeastRecentlyUsed_WhenOverBudget() throws IOException {
+        DerivedImageCache cache = new DerivedImageCache(tempDir.toString(), DataSize.ofBytes(1000));
+        Path first = create(cache, "1-a.jpg", 400);
+        Path second = create(cache, "2-b.jpg", 400);
+        cache.getOrCreate("1-a.jpg", out -> fail("Déjà en cache")).close();
+        Path third = create(cache, "3-c.jpg", 400);
+
+        assertTrue(Files.exists(first));
+        assertFalse(Files.exists(second));
+        assertTrue(Files.exists(third));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(800, cache.getSizeBytes());
+    }
+
+    @Test
+    @DisplayName("Une variante en cours d'envoi n'est supprimée qu'après sa libération")
+    void getOrCreate_DefersDeletion_WhileLeased() throws IOException {
+        DerivedImageCache cache = new DerivedImageCache(tempDir.toString(), DataSize.ofBytes(1000));
+        DerivedImageCache.Lease served = cache.getOrCreate("1-a.jpg", out -> out.write(new byte[600]));
+
+        Path second = create(cache, "2-b.jpg", 600);
+        cache.invalidate(2L);
+
+        assertTrue(Files.exists(served.path()), "Le fichier servi ne doit pas être supprimé par l'éviction");
+        assertFalse(Files.exists(second));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(0, cache.getEntryCount());
+
+        served.close();
+        assertFalse(Files.exists(served.path()), "Le fichier évincé doit être supprimé à sa libération");
+    }
+
+    @Test
+    @DisplayName("L'index est reconstruit à partir des fichiers présents au démarrage")
+    void constructor_RebuildsIndexFromDisk() throws IOException {
+        Files.write(tempDir.resolve("5-x.png"), new byte[300]);
+        Files.write(tempDir.resolve(".render-123.tmp"), new byte[50]);
+
+        DerivedImageCache cache = new DerivedImageCache(tempDir.toString(), DataSize.ofMegabytes(1));
+
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(300, cache.getSizeBytes());
+        assertFalse(Files.exists(tempDir.resolve(".render-123.tmp")));
+        cache.invalidate(5L);
+        assertFalse(Files.exists(tempDir.resolve("5-x.png")));
+    }
+
+    private static Path create(DerivedImageCache cache, String key, int size) throws IOException {
+        try (DerivedImageCache.Lease lease = cache.getOrCreate(key, out -> out.write(new byte[size]))) {
+            return lease.path();
+        }
+    }
+}
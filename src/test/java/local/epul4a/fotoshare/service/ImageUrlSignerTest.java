@@ -0,0 +1,68 @@
+package local.epul4a.fotoshare.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de la signature des URL d'images
+ */
+@DisplayName("Tests de l'ImageUrlSigner")
+class ImageUrlSignerTest {
+
+    private static final long NOW = 1_700_000_000L;
+
+    private final ImageUrlSigner signer = new ImageUrlSigner("secret-de-test", Duration.ofHours(12));
+
+    @Test
+    @DisplayName("Une URL signée est acceptée jusqu'à son expiration, pour la même variante et la même version")
+    void verify_AcceptsOnlyMatchingUnexpiredUrl() {
+        long expiresAt = signer.expiresAt(NOW);
+        String signature = signer.sign(42L, "thumbnail", "v1", 0, expiresAt, "alice");
+
+        assertTrue(signer.verify(42L, "thumbnail", "v1", 0, expiresAt, signature, "alice", NOW));
+        assertFalse(signer.verify(42L, "thumbnail", "v1", 0, expiresAt, signature, "alice", expiresAt + 1));
+        assertFalse(signer.verify(43L, "thumbnail", "v1", 0, expiresAt, signature, "alice", NOW));
+        assertFalse(signer.verify(42L, "image", "v1", 0, expiresAt, signature, "alice", NOW));
+        assertFalse(signer.verify(42L, "thumbnail", "v2", 0, expiresAt, signature, "alice", NOW));
+        assertFalse(signer.verify(42L, "thumbnail", "v1", 0, expiresAt + 300, signature, "alice", NOW));
+        assertFalse(signer.verify(42L, "thumbnail", "v1", 0, expiresAt, "pas-une-signature!", "alice", NOW));
+    }
+
+    @Test
+    @DisplayName("L'URL d'une photo privée ne vaut que pour l'utilisateur à qui elle a été émise")
+    void verify_UserBoundUrl_RejectsOtherUsers() {
+        long expiresAt = signer.expiresAt(NOW);
+        String signature = signer.sign(42L, "image", "v1", 0, expiresAt, "alice");
+
+        assertTrue(signer.verify(42L, "image", "v1", 0, expiresAt, signature, "alice", NOW));
+        assertFalse(signer.verify(42L, "image", "v1", 0, expiresAt, signature, "bob", NOW));
+        assertFalse(signer.verify(42L, "image", "v1", 0, expiresAt, signature, null, NOW));
+    }
+
+    @Test
+    @DisplayName("Les pages rendues pendant la même période reçoivent la même expiration")
+    void expiresAt_IsStableWithinPeriod() {
+        long expiresAt = signer.expiresAt(NOW);
+
+        long period = 12 * 3600;
+        long periodStart = NOW / period * period;
+
+        assertEquals(expiresAt, signer.expiresAt(periodStart));
+        assertEquals(expiresAt, signer.expiresAt(periodStart + period - 1));
+        assertTrue(expiresAt - NOW >= period && expiresAt - NOW <= 2 * period);
+    }
+
+    @Test
+    @DisplayName("Une URL émise avant un changement des partages de la photo n'est plus acceptée")
+    void verify_RejectsUrlSignedWithPreviousAclVersion() {
+        long expiresAt = signer.expiresAt(NOW);
+        String signature = signer.sign(42L, "image", "v1", 3, expiresAt, "alice");
+
+        assertTrue(signer.verify(42L, "image", "v1", 3, expiresAt, signature, "alice", NOW));
+        assertFalse(signer.verify(42L, "image", "v1", 4, expiresAt, signature, "alice", NOW));
+    }
+}
@@ -0,0 +1,71 @@
+package local.epul4a.fotoshare.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests du report des compteurs de lecture : un seul batch par passage, rien n'est perdu en cas d'échec
+ */
+@DisplayName("Tests du PhotoAccessTracker")
+class PhotoAccessTrackerTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private PhotoAccessTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        tracker = new PhotoAccessTracker(jdbcTemplate, new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    }
+
+    @Test
+    @DisplayName("Les lectures de toutes les photos sont reportées en un seul batch")
+    @SuppressWarnings("unchecked")
+    void flush_WritesOneBatch() {
+        tracker.record(1L, false);
+        tracker.record(1L, true);
+        tracker.record(2L, false);
+
+        tracker.flush();
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        assertEquals(2, rows.getValue().size());
+        Object[] first = rows.getValue().stream().filter(row -> row[2].equals(1L)).findFirst().orElseThrow();
+        assertEquals(2L, first[0]);
+        assertNotNull(first[1]);
+
+        tracker.flush();
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("Échec du batch -> les lectures sont remises en attente avec celles arrivées entre-temps")
+    @SuppressWarnings("unchecked")
+    void flush_KeepsCounts_WhenBatchFails() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("base indisponible"))
+                .thenReturn(new int[]{1});
+        tracker.record(1L, false);
+        tracker.flush();
+        tracker.record(1L, false);
+
+        tracker.flush();
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), rows.capture());
+        assertEquals(2L, rows.getValue().get(0)[0]);
+    }
+}
@@ -0,0 +1,114 @@
+package local.epul4a.fotoshare.service;
+
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.entity.Share;
+import local.epul4a.fotoshare.entity.User;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.ShareRepository;
+import local.epul4a.fotoshare.repository.UserRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests de cohérence du cache des droits lorsque des partages sont retirés pendant des lectures
+ */
+@DisplayName("Tests du PhotoAclCache")
+class PhotoAclCacheTest {
+
+    private static final Long PHOTO_ID = 7L;
+    private static final Long USER_ID = 1L;
+
+    @Test
+    @DisplayName("Un droit lu en base avant une invalidation n'est pas remis en cache après elle")
+    void put_AfterInvalidation_IsIgnored() {
+        PhotoAclCache cache = new PhotoAclCache(100);
+        long generation = cache.generation(PHOTO_ID);
+
+        // Le partage est retiré entre la lecture en base et la mise en cache
+        cache.invalidate(PHOTO_ID);
+        cache.putPhoto(PHOTO_ID, new PhotoAclCache.PhotoAcl(2L, Photo.Visibility.PRIVATE), generation);
+        cache.putShare(PHOTO_ID, USER_ID, Share.PermissionLevel.READ, generation);
+
+        assertNull(cache.getPhoto(PHOTO_ID));
+        assertNull(cache.getShare(PHOTO_ID, USER_ID));
+    }
+
+    @Test
+    @DisplayName("Une fois le retrait d'un partage terminé, plus aucune lecture concurrente ne l'accorde")
+    void revokeWhileReading_NeverGrantsAfterRevoke() throws Exception {
+        PhotoAclCache cache = new PhotoAclCache(100);
+        AtomicBoolean shared = new AtomicBoolean(true);
+
+        User owner = new User();
+        owner.setId(2L);
+        Photo photo = new Photo();
+        photo.setId(PHOTO_ID);
+        photo.setOwner(owner);
+        photo.setVisibility(Photo.Visibility.PRIVATE);
+        User reader = new User();
+        reader.setId(USER_ID);
+        reader.setUsername("reader");
+        reader.setRole(User.Role.USER);
+
+        PhotoRepository photoRepository = mock(PhotoRepository.class);
+        ShareRepository shareRepository = mock(ShareRepository.class);
+        UserRepository userRepository = mock(UserRepository.class);
+        when(photoRepository.findById(PHOTO_ID)).thenReturn(Optional.of(photo));
+        when(userRepository.findByUsername("reader")).thenReturn(Optional.of(reader));
+        // Lecture en base lente, pour que les retraits tombent au milieu des lectures
+        when(shareRepository.findPermissionLevel(PHOTO_ID, USER_ID)).thenAnswer(invocation -> {
+            boolean current = shared.get();
+            Thread.yield();
+            return current ? Optional.of(Share.PermissionLevel.READ) : Optional.empty();
+        });
+        SecurityService securityService = new SecurityService(photoRepository, userRepository, shareRepository, null, cache);
+        Authentication authentication = mock(Authentication.class);
+        when(authentication.isAuthenticated()).thenReturn(true);
+        when(authentication.getName()).thenReturn("reader");
+
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 200; round++) {
+                shared.set(true);
+                cache.invalidate(PHOTO_ID);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> reads = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    reads.add(readers.submit(() -> {
+                        start.await();
+                        for (int j = 0; j < 20; j++) {
+                            securityService.canAccessPhoto(authentication, PHOTO_ID);
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                // Retrait : la base d'abord, puis l'invalidation (ShareService.revokeAccess)
+                shared.set(false);
+                cache.invalidate(PHOTO_ID);
+
+                assertFalse(securityService.canAccessPhoto(authentication, PHOTO_ID), "Partage retiré au tour " + round);
+                for (Future<?> read : reads) {
+                    read.get(10, TimeUnit.SECONDS);
+                }
+                assertFalse(securityService.canAccessPhoto(authentication, PHOTO_ID), "Partage remis en cache au tour " + round);
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package local.epul4a.fotoshare.service;
+
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.ShareRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests de l'index mémoire du fil : pagination dans l'union des bitmaps et mise à jour par les événements
+ * (hors transaction, les événements sont appliqués immédiatement)
+ */
+@DisplayName("Tests du PhotoFeedIndex")
+class PhotoFeedIndexTest {
+
+    private static final Long USER_ID = 1L;
+    private static final Long OTHER_ID = 2L;
+
+    private PhotoRepository photoRepository;
+    private ShareRepository shareRepository;
+    private PhotoFeedIndex index;
+
+    @BeforeEach
+    void setUp() {
+        photoRepository = mock(PhotoRepository.class);
+        shareRepository = mock(ShareRepository.class);
+        index = new PhotoFeedIndex(photoRepository, shareRepository, true, 100);
+
+        when(photoRepository.findIdsByVisibility(Photo.Visibility.PUBLIC)).thenReturn(List.of(1L, 5L));
+        when(photoRepository.findIdsByOwnerId(USER_ID)).thenReturn(List.of(2L));
+        when(shareRepository.findPhotoIdsByUserId(USER_ID)).thenReturn(List.of(7L, 5L));
+    }
+
+    @Test
+    @DisplayName("Les pages sont lues dans l'union des photos publiques, possédées et partagées, à partir du curseur")
+    void slice_ReadsUnionBeforeCursor() {
+        Slice<Long> first = index.slice(USER_ID, Long.MAX_VALUE, 2);
+        Slice<Long> second = index.slice(USER_ID, first.getContent().get(1), 2);
+
+        assertEquals(List.of(7L, 5L), first.getContent());
+        assertEquals(List.of(2L, 1L), second.getContent());
+        assertTrue(first.hasNext());
+        assertFalse(second.hasNext());
+        verify(photoRepository, times(1)).findIdsByVisibility(Photo.Visibility.PUBLIC);
+        verify(photoRepository, times(1)).findIdsByOwnerId(USER_ID);
+        assertEquals(1, index.getHits());
+    }
+
+    @Test
+    @DisplayName("Upload, suppression, partage et visibilité mettent l'index à jour sans le recharger")
+    void events_UpdateLoadedBitmaps() {
+        index.slice(USER_ID, Long.MAX_VALUE, 10);
+
+        index.photoAdded(9L, USER_ID, Photo.Visibility.PRIVATE);
+        index.photoAdded(10L, OTHER_ID, Photo.Visibility.PRIVATE);
+        index.photoDeleted(1L);
+        index.shareRemoved(7L, USER_ID, OTHER_ID);
+        index.shareAdded(11L, USER_ID);
+        index.visibilityChanged(12L, Photo.Visibility.PUBLIC);
+
+        assertEquals(List.of(12L, 11L, 9L, 5L, 2L), index.slice(USER_ID, Long.MAX_VALUE, 10).getContent());
+        verify(photoRepository, times(1)).findIdsByOwnerId(USER_ID);
+    }
+
+    @Test
+    @DisplayName("Une photo publique et partagée n'apparaît qu'une fois, et le curseur au-delà de 2^32 lit tout le fil")
+    void slice_MergesWithoutDuplicates() {
+        Slice<Long> page = index.slice(USER_ID, 0x1_0000_0000L + 5, 10);
+
+        assertEquals(List.of(7L, 5L, 2L, 1L), page.getContent());
+        assertFalse(page.hasNext());
+        assertEquals(List.of(), index.slice(USER_ID, 1L, 10).getContent());
+    }
+
+    @Test
+    @DisplayName("Un événement publie une copie : les bitmaps déjà lus ne changent pas")
+    void events_CopyOnWrite() {
+        index.slice(USER_ID, Long.MAX_VALUE, 10);
+        index.shareAdded(11L, USER_ID);
+        index.photoDeleted(2L);
+
+        assertEquals(List.of(11L, 7L, 5L, 1L), index.slice(USER_ID, Long.MAX_VALUE, 10).getContent());
+        index.photoDeleted(11L);
+        assertEquals(List.of(7L, 5L, 1L), index.slice(USER_ID, Long.MAX_VALUE, 10).getContent());
+    }
+
+    @Test
+    @DisplayName("Un chargement concurrent d'un événement n'est pas conservé")
+    void load_ConcurrentWithEvent_IsNotKept() {
+        when(photoRepository.findIdsByOwnerId(USER_ID)).thenAnswer(invocation -> {
+            // Partage validé pendant la lecture en base
+            index.shareAdded(11L, USER_ID);
+            return List.of(2L);
+        }).thenReturn(List.of(2L));
+        when(shareRepository.findPhotoIdsByUserId(USER_ID)).thenReturn(List.of(7L), List.of(7L, 11L));
+
+        assertNull(index.slice(USER_ID, Long.MAX_VALUE, 10), "La page doit être servie par la requête SQL");
+        assertEquals(0, index.getUserCount());
+
+        assertEquals(List.of(11L, 7L, 5L, 2L, 1L), index.slice(USER_ID, Long.MAX_VALUE, 10).getContent());
+        assertEquals(1, index.getUserCount());
+    }
+}
@@ -0,0 +1,105 @@
+package local.epul4a.fotoshare.service;
+
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.entity.RenditionBackfillJob;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.RenditionBackfillJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests de la régénération en masse : parcours par id, point de reprise et décompte des échecs
+ */
+@DisplayName("Tests du RenditionBackfillService")
+class RenditionBackfillServiceTest {
+
+    private RenditionBackfillJobRepository jobRepository;
+    private PhotoRepository photoRepository;
+    private RenditionService renditionService;
+    private ThreadPoolTaskExecutor executor;
+    private RenditionBackfillService backfillService;
+
+    @BeforeEach
+    void setUp() {
+        jobRepository = mock(RenditionBackfillJobRepository.class);
+        photoRepository = mock(PhotoRepository.class);
+        renditionService = mock(RenditionService.class);
+        when(jobRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.initialize();
+
+        backfillService = new RenditionBackfillService(jobRepository, photoRepository, renditionService, executor);
+        ReflectionTestUtils.setField(backfillService, "batchSize", 2);
+        ReflectionTestUtils.setField(backfillService, "maxPhotosPerSecond", 0.0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("Le job reprend après le dernier id enregistré et avance page par page")
+    void run_ResumesFromCheckpoint() {
+        RenditionBackfillJob job = new RenditionBackfillJob();
+        job.setLastPhotoId(10L);
+        job.setTotalCount(5);
+        job.setProcessedCount(2);
+        when(photoRepository.findIdsAfter(eq(10L), any(Pageable.class))).thenReturn(List.of(11L, 12L));
+        when(photoRepository.findIdsAfter(eq(12L), any(Pageable.class))).thenReturn(List.of(15L));
+        when(photoRepository.findIdsAfter(eq(15L), any(Pageable.class))).thenReturn(List.of());
+        when(renditionService.process(anyLong())).thenReturn(Photo.ProcessingStatus.READY);
+        when(renditionService.process(12L)).thenReturn(Photo.ProcessingStatus.FAILED);
+
+        backfillService.run(job);
+
+        verify(renditionService, never()).process(10L);
+        verify(renditionService).process(11L);
+        verify(renditionService).process(15L);
+        assertEquals(RenditionBackfillJob.Status.COMPLETED, job.getStatus());
+        assertEquals(15L, job.getLastPhotoId());
+        assertEquals(5, job.getProcessedCount());
+        assertEquals(1, job.getFailedCount());
+        assertNotNull(job.getFinishedAt());
+    }
+
+    @Test
+    @DisplayName("Une exception pendant une photo est comptée comme un échec sans arrêter le job")
+    void run_CountsExceptionsAsFailures() {
+        RenditionBackfillJob job = new RenditionBackfillJob();
+        when(photoRepository.findIdsAfter(eq(0L), any(Pageable.class))).thenReturn(List.of(1L));
+        when(photoRepository.findIdsAfter(eq(1L), any(Pageable.class))).thenReturn(List.of());
+        when(renditionService.process(1L)).thenThrow(new IllegalStateException("disque plein"));
+
+        backfillService.run(job);
+
+        assertEquals(RenditionBackfillJob.Status.COMPLETED, job.getStatus());
+        assertEquals(1, job.getFailedCount());
+    }
+
+    @Test
+    @DisplayName("Les photos sans miniature sont traitées par lots sur le pool, malgré un échec")
+    void processAll_ProcessesEveryPhotoInBatches() {
+        when(renditionService.process(anyLong())).thenReturn(Photo.ProcessingStatus.READY);
+        when(renditionService.process(2L)).thenThrow(new IllegalStateException("disque plein"));
+
+        backfillService.processAll(List.of(1L, 2L, 3L));
+
+        verify(renditionService).process(1L);
+        verify(renditionService).process(2L);
+        verify(renditionService).process(3L);
+    }
+}
@@ -0,0 +1,384 @@
+package local.epul4a.fotoshare.service;
+
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests du décodage des images et de la génération des déclinaisons
+ */
+@DisplayName("Tests du RenditionService et de l'ImageIODecoder")
+class RenditionServiceTest {
+
+    private static final int THUMBNAIL_SIZE = 300;
+
+    // WebP 1x1 sans perte, illisible par l'ImageIO standard
+    private static final String WEBP_1X1 = "UklGRhoAAABXRUJQVlA4TA0AAAAvAAAAEAcQERGIiP4HAA==";
+
+    // JPEG CMJN 32x24 cyan uni, marqueur Adobe (valeurs inversées, comme les exports Photoshop)
+    private static final String CMYK_JPEG_32X24 = "/9j/7gAOQWRvYmUAZAAAAAAA/9sAQwADAgIDAgIDAwMDBAMDBAUIBQUEBAUKBwcGCAwKDAwLCgsLDQ4SEA0OEQ4LCxAWEBETFBUVFQwPFxgWFBgSFBUU/8AAFAgAGAAgBAERAAIRAAMRAAQRAP/EAB8AAAEFAQEBAQEBAAAAAAAAAAABAgMEBQYHCAkKC//EALUQAAIBAwMCBAMFBQQEAAABfQECAwAEEQUSITFBBhNRYQcicRQygZGhCCNCscEVUtHwJDNicoIJChYXGBkaJSYnKCkqNDU2Nzg5OkNERUZHSElKU1RVVldYWVpjZGVmZ2hpanN0dXZ3eHl6g4SFhoeIiYqSk5SVlpeYmZqio6Slpqeoqaqys7S1tre4ubrCw8TFxsfIycrS09TV1tfY2drh4uPk5ebn6Onq8fLz9PX29/j5+v/aAA4EAQACAAMABAAAPwD8qq/VOv1Tr9U6KKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKKK/9k=";
+
+    @TempDir
+    Path tempDir;
+
+    private final ImageIODecoder decoder = new ImageIODecoder();
+
+    @Test
+    @DisplayName("L'image est décodée à une résolution proche de la miniature")
+    void decode_DecodesCloseToTargetSize() throws IOException {
+        Path source = createJpeg(4000, 3000);
+
+        BufferedImage image = decoder.decode(source, THUMBNAIL_SIZE, THUMBNAIL_SIZE / 2);
+
+        int longestSide = Math.max(image.getWidth(), image.getHeight());
+        assertTrue(longestSide >= THUMBNAIL_SIZE, "L'image décodée ne doit pas être plus petite que la miniature");
+        assertTrue(longestSide < 4 * THUMBNAIL_SIZE, "L'image ne doit pas être décodée en pleine résolution");
+        assertEquals(4000.0 / 3000.0, (double) image.getWidth() / image.getHeight(), 0.01);
+    }
+
+    @Test
+    @DisplayName("Une petite image est décodée telle quelle")
+    void decode_KeepsSmallImages() throws IOException {
+        Path source = createJpeg(200, 100);
+
+        BufferedImage image = decoder.decode(source, THUMBNAIL_SIZE, THUMBNAIL_SIZE / 2);
+
+        assertEquals(200, image.getWidth());
+        assertEquals(100, image.getHeight());
+    }
+
+    @Test
+    @DisplayName("Un fichier illisible est refusé")
+    void decode_Throws_WhenNotAnImage() throws IOException {
+        Path source = Files.write(tempDir.resolve("fake.jpg"), "pas une image".getBytes());
+
+        assertThrows(IOException.class, () -> decoder.decode(source, THUMBNAIL_SIZE, THUMBNAIL_SIZE / 2));
+    }
+
+    @Test
+    @DisplayName("Le décodage sous-échantillonné alloue au moins 10 fois moins que ImageIO.read")
+    void decode_AllocatesAnOrderOfMagnitudeLess() throws IOException {
+        Path source = createJpeg(4000, 3000);
+
+        // Préchauffage (chargement des lecteurs ImageIO)
+        for (int i = 0; i < 2; i++) {
+            ImageIO.read(source.toFile());
+            decoder.decode(source, THUMBNAIL_SIZE, THUMBNAIL_SIZE / 2);
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        ImageIO.read(source.toFile());
+        long fullDecode = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        before = threadBean.getThreadAllocatedBytes(threadId);
+        decoder.decode(source, THUMBNAIL_SIZE, THUMBNAIL_SIZE / 2);
+        long subsampledDecode = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(subsampledDecode * 10 < fullDecode,
+                "Pleine résolution : " + fullDecode + " octets, sous-échantillonné : " + subsampledDecode + " octets");
+    }
+
+    @Test
+    @DisplayName("Un seul décodage produit la miniature et les déclinaisons plus petites que l'original")
+    void process_GeneratesRenditionLadder() throws IOException {
+        Path source = createJpeg(1600, 1200);
+        Photo photo = photo(source, "image/jpeg");
+
+        PhotoRepository photoRepository = mockRepository(photo);
+
+        renditionService(photoRepository).process(1L);
+
+        verify(photoRepository).updateProcessingResult(eq(1L), eq("thumb_" + photo.getStorageFilename()),
+                eq("160,320,640,1280"), eq(1600), eq(1200), eq(Photo.ProcessingStatus.READY), any(LocalDateTime.class));
+        for (int width : new int[]{160, 320, 640, 1280}) {
+            BufferedImage rendition = ImageIO.read(generatedFile(photo,
+                    RenditionService.renditionFilename(width, photo.getStorageFilename())).toFile());
+            assertEquals(width, rendition.getWidth());
+            assertEquals(width * 3 / 4, rendition.getHeight());
+        }
+        assertFalse(Files.exists(generatedFile(photo, RenditionService.renditionFilename(2048, photo.getStorageFilename()))),
+                "L'original ne doit pas être agrandi");
+        assertEquals(300, ImageIO.read(generatedFile(photo, "thumb_" + photo.getStorageFilename()).toFile()).getWidth());
+    }
+
+    @Test
+    @DisplayName("Les doublons en attente reçoivent le résultat, après la photo traitée")
+    void process_CopiesResultToPendingDuplicates() throws IOException {
+        Path source = createJpeg(800, 600);
+        Photo photo = photo(source, "image/jpeg");
+        PhotoRepository photoRepository = mockRepository(photo);
+
+        renditionService(photoRepository).process(1L);
+
+        InOrder order = inOrder(photoRepository);
+        order.verify(photoRepository).updateProcessingResult(eq(1L), eq("thumb_" + photo.getStorageFilename()),
+                eq("160,320,640"), eq(800), eq(600), eq(Photo.ProcessingStatus.READY), any(LocalDateTime.class));
+        order.verify(photoRepository).updatePendingDuplicates(eq(1L), eq(photo.getStorageFilename()),
+                eq("thumb_" + photo.getStorageFilename()), eq("160,320,640"), eq(800), eq(600),
+                eq(Photo.ProcessingStatus.READY), any(LocalDateTime.class));
+    }
+
+    @Test
+    @DisplayName("Les WebP sont décodés grâce aux lecteurs ajoutés à ImageIO")
+    void decode_ReadsWebp() throws IOException {
+        Path source = Files.write(tempDir.resolve("photo.webp"), Base64.getDecoder().decode(WEBP_1X1));
+
+        assertTrue(decoder.supports("image/webp"));
+        BufferedImage image = decoder.decode(source, 1, 1);
+
+        assertEquals(1, image.getWidth());
+        assertEquals(1, image.getHeight());
+    }
+
+    @Test
+    @DisplayName("Les JPEG CMJN sont décodés par le lecteur TwelveMonkeys, couleurs converties en RVB")
+    void decode_ReadsCmykJpegWithTwelveMonkeys() throws IOException {
+        Path source = Files.write(tempDir.resolve("cmyk.jpg"), Base64.getDecoder().decode(CMYK_JPEG_32X24));
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            assertTrue(ImageIO.getImageReaders(input).next().getClass().getName().startsWith("com.twelvemonkeys."),
+                    "Le lecteur TwelveMonkeys doit passer avant celui du JDK");
+        }
+        BufferedImage image = decoder.decode(source, 32, 24);
+
+        assertEquals(32, image.getWidth());
+        assertEquals(24, image.getHeight());
+        Color center = new Color(image.getRGB(16, 12));
+        assertTrue(center.getRed() < 100 && center.getGreen() > 100 && center.getBlue() > 150,
+                "Le cyan doit rester cyan : " + center);
+    }
+
+    @Test
+    @DisplayName("Un PNG 16 bits par composante produit ses déclinaisons")
+    void process_Reads16BitPng() throws IOException {
+        ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                new int[]{16, 16, 16}, false, false, Transparency.OPAQUE, DataBuffer.TYPE_USHORT);
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(800, 600);
+        for (int y = 0; y < 600; y++) {
+            for (int x = 0; x < 800; x++) {
+                raster.setPixel(x, y, new int[]{0xFFFF, 0x8000, 0});
+            }
+        }
+        Path source = tempDir.resolve("deep.png");
+        ImageIO.write(new BufferedImage(colorModel, raster, false, null), "png", source.toFile());
+        Photo photo = photo(source, "image/png");
+        PhotoRepository photoRepository = mockRepository(photo);
+
+        renditionService(photoRepository).process(1L);
+
+        verify(photoRepository).updateProcessingResult(eq(1L), eq("thumb_deep.png"), eq("160,320,640"),
+                eq(800), eq(600), eq(Photo.ProcessingStatus.READY), any(LocalDateTime.class));
+        Color center = new Color(ImageIO.read(generatedFile(photo, "thumb_deep.png").toFile()).getRGB(150, 112));
+        assertTrue(center.getRed() > 230 && Math.abs(center.getGreen() - 128) < 20 && center.getBlue() < 25,
+                "Couleur attendue orange : " + center);
+    }
+
+    @Test
+    @DisplayName("La miniature d'un GIF animé est tirée de sa première image")
+    void process_UsesFirstFrameOfAnimatedGif() throws IOException {
+        Path source = tempDir.resolve("animated.gif");
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(source.toFile())) {
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+            for (Color color : new Color[]{Color.RED, Color.BLUE}) {
+                BufferedImage frame = new BufferedImage(400, 200, BufferedImage.TYPE_BYTE_INDEXED);
+                Graphics2D g = frame.createGraphics();
+                g.setColor(color);
+                g.fillRect(0, 0, 400, 200);
+                g.dispose();
+                writer.writeToSequence(new IIOImage(frame, null, null), null);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+        Photo photo = photo(source, "image/gif");
+        PhotoRepository photoRepository = mockRepository(photo);
+
+        renditionService(photoRepository).process(1L);
+
+        verify(photoRepository).updateProcessingResult(eq(1L), eq("thumb_animated.gif"), eq("160,320"),
+                eq(400), eq(200), eq(Photo.ProcessingStatus.READY), any(LocalDateTime.class));
+        Color center = new Color(ImageIO.read(generatedFile(photo, "thumb_animated.gif").toFile()).getRGB(150, 75));
+        assertTrue(center.getRed() > 200 && center.getBlue() < 60, "Première image (rouge) attendue : " + center);
+    }
+
+    @Test
+    @DisplayName("Les zones transparentes deviennent blanches dans la miniature JPEG")
+    void process_FlattensTransparencyOnWhite() throws IOException {
+        BufferedImage transparent = new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB);
+        Path source = tempDir.resolve("transparent.png");
+        ImageIO.write(transparent, "png", source.toFile());
+        Photo photo = photo(source, "image/png");
+
+        renditionService(mockRepository(photo)).process(1L);
+
+        BufferedImage thumbnail = ImageIO.read(generatedFile(photo, "thumb_transparent.png").toFile());
+        Color center = new Color(thumbnail.getRGB(150, 150));
+        assertTrue(center.getRed() > 240 && center.getGreen() > 240 && center.getBlue() > 240,
+                "Le fond doit être blanc, pas noir : " + center);
+    }
+
+    @Test
+    @DisplayName("Échec du décodage -> FAILED, sans jamais utiliser l'original comme miniature")
+    void process_MarksFailed_WithoutFallingBackToOriginal() throws IOException {
+        Path source = Files.write(tempDir.resolve("corrupt.jpg"), new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0, 0});
+        Photo photo = photo(source, "image/jpeg");
+        PhotoRepository photoRepository = mockRepository(photo);
+
+        renditionService(photoRepository).process(1L);
+
+        verify(photoRepository).updateProcessingResult(eq(1L), isNull(), isNull(), isNull(), isNull(),
+                eq(Photo.ProcessingStatus.FAILED), any(LocalDateTime.class));
+    }
+
+    @Test
+    @DisplayName("Échec d'une régénération -> les déclinaisons précédentes restent enregistrées")
+    void process_KeepsPreviousRenditions_WhenRegenerationFails() throws IOException {
+        Path source = Files.write(tempDir.resolve("corrupt.jpg"), new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0, 0});
+        Photo photo = photo(source, "image/jpeg");
+        photo.setThumbnailFilename("thumb_corrupt.jpg");
+        photo.setRenditionWidths("160,320");
+        PhotoRepository photoRepository = mockRepository(photo);
+
+        assertEquals(Photo.ProcessingStatus.FAILED, renditionService(photoRepository).process(1L));
+
+        verify(photoRepository, never()).updateProcessingResult(anyLong(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Les photos en attente sont toutes reprises, sans dépasser un traitement par thread du pool")
+    void processAll_SubmitsEveryPendingPhoto() throws InterruptedException {
+        PhotoRepository photoRepository = mock(PhotoRepository.class);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        RenditionService renditionService = new RenditionService(photoRepository, executor, List.of(decoder),
+                new FileSystemPhotoStorage(StorageVolumes.single(new UploadLayout(tempDir.toString()))));
+
+        renditionService.processAll(List.of(1L, 2L, 3L));
+        executor.shutdown();
+        assertTrue(executor.getThreadPoolExecutor().awaitTermination(10, TimeUnit.SECONDS));
+
+        verify(photoRepository).findById(1L);
+        verify(photoRepository).findById(2L);
+        verify(photoRepository).findById(3L);
+    }
+
+    @Test
+    @DisplayName("File pleine -> la photo n'est pas traitée par l'appelant mais soumise à nouveau plus tard")
+    void submit_DefersToRetry_WhenQueueIsFull() throws InterruptedException {
+        PhotoRepository photoRepository = mock(PhotoRepository.class);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        RenditionService renditionService = new RenditionService(photoRepository, executor, List.of(decoder),
+                new FileSystemPhotoStorage(StorageVolumes.single(new UploadLayout(tempDir.toString()))));
+
+        // Un thread occupé et une tâche en file : la file est pleine
+        CountDownLatch busy = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            executor.execute(() -> {
+                try {
+                    busy.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        renditionService.submit(2L);
+        verify(photoRepository, never()).findById(2L);
+
+        busy.countDown();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!executor.getThreadPoolExecutor().getQueue().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        renditionService.retryRejected();
+        verify(photoRepository, timeout(10_000)).findById(2L);
+        executor.shutdown();
+    }
+
+    private Photo photo(Path source, String contentType) {
+        Photo photo = new Photo();
+        photo.setId(1L);
+        photo.setStorageFilename(source.getFileName().toString());
+        photo.setContentType(contentType);
+        return photo;
+    }
+
+    private PhotoRepository mockRepository(Photo photo) {
+        PhotoRepository photoRepository = mock(PhotoRepository.class);
+        when(photoRepository.findById(photo.getId())).thenReturn(Optional.of(photo));
+        when(photoRepository.updateProcessingResult(anyLong(), any(), any(), any(), any(), any(), any())).thenReturn(1);
+        return photoRepository;
+    }
+
+    private RenditionService renditionService(PhotoRepository photoRepository) {
+        RenditionService renditionService = new RenditionService(photoRepository, new ThreadPoolTaskExecutor(),
+                List.of(decoder), new FileSystemPhotoStorage(StorageVolumes.single(new UploadLayout(tempDir.toString()))));
+        ReflectionTestUtils.setField(renditionService, "renditionWidths", new int[]{160, 320, 640, 1280, 2048});
+        return renditionService;
+    }
+
+    // Les originaux des tests sont à la racine (ancienne disposition), les déclinaisons dans les sous-répertoires
+    private Path generatedFile(Photo photo, String filename) {
+        return new UploadLayout(tempDir.toString()).shardedPath(photo.getStorageFilename(), filename);
+    }
+
+    private Path createJpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+
+        Path file = tempDir.resolve("photo-" + width + "x" + height + ".jpg");
+        ImageIO.write(image, "jpg", file.toFile());
+        return file;
+    }
+}
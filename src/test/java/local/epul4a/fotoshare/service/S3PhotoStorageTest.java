@@ -0,0 +1,140 @@
+package local.epul4a.fotoshare.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests du stockage S3 avec un client simulé
+ */
+@DisplayName("Tests du S3PhotoStorage")
+class S3PhotoStorageTest {
+
+    private static final StorageKey KEY = StorageKey.original(null, "abc.jpg");
+
+    @TempDir
+    Path tempDir;
+
+    private S3Client s3;
+    private S3PhotoStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        s3 = mock(S3Client.class);
+        storage = new S3PhotoStorage(s3, "fotoshare", "uploads/", 4, 2, tempDir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    @DisplayName("Un petit fichier est envoyé en une requête sous la clé répartie, puis supprimé localement")
+    void put_SmallFile_UsesSinglePutObject() throws IOException {
+        Path source = Files.write(storage.createTempFile(null, ".upload-"), new byte[]{1, 2, 3});
+
+        storage.put(KEY, source);
+
+        ArgumentCaptor<PutObjectRequest> request = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3).putObject(request.capture(), any(RequestBody.class));
+        assertEquals("uploads/" + UploadLayout.shardOf("abc.jpg") + "/abc.jpg", request.getValue().key());
+        verify(s3, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+        assertFalse(Files.exists(source));
+    }
+
+    @Test
+    @DisplayName("Un gros fichier est envoyé en multipart, les parts étant listées dans l'ordre")
+    void put_LargeFile_UploadsPartsAndCompletes() throws IOException {
+        when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("u1").build());
+        when(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            UploadPartRequest part = invocation.getArgument(0);
+            return UploadPartResponse.builder().eTag("etag-" + part.partNumber()).build();
+        });
+        Path source = Files.write(storage.createTempFile(null, ".upload-"), new byte[10]);
+
+        storage.put(KEY, source);
+
+        ArgumentCaptor<UploadPartRequest> parts = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(s3, times(3)).uploadPart(parts.capture(), any(RequestBody.class));
+        assertEquals(10L, parts.getAllValues().stream().mapToLong(UploadPartRequest::contentLength).sum());
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3).completeMultipartUpload(complete.capture());
+        List<CompletedPart> completed = complete.getValue().multipartUpload().parts();
+        assertEquals(List.of(1, 2, 3), completed.stream().map(CompletedPart::partNumber).toList());
+        assertEquals("etag-2", completed.get(1).eTag());
+        assertFalse(Files.exists(source));
+    }
+
+    @Test
+    @DisplayName("L'échec d'une part annule l'envoi multipart")
+    void put_PartFailure_AbortsUpload() throws IOException {
+        when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("u1").build());
+        when(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().statusCode(500).build());
+        Path source = Files.write(storage.createTempFile(null, ".upload-"), new byte[10]);
+
+        assertThrows(IOException.class, () -> storage.put(KEY, source));
+
+        verify(s3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    @DisplayName("Une plage est lue avec un GET Range, sans télécharger l'objet entier")
+    void stream_UsesRangeHeader() throws IOException {
+        when(s3.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().build(), AbortableInputStream.create(new ByteArrayInputStream(new byte[]{7, 8, 9, 10}))));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        storage.stream(KEY, 2, 4, out);
+
+        ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3).getObject(request.capture());
+        assertEquals("bytes=2-5", request.getValue().range());
+        assertArrayEquals(new byte[]{7, 8, 9, 10}, out.toByteArray());
+    }
+
+    @Test
+    @DisplayName("Un objet absent a une taille de -1")
+    void size_MissingObject_ReturnsMinusOne() throws IOException {
+        when(s3.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.builder().statusCode(404).build());
+
+        assertEquals(-1, storage.size(KEY));
+        assertFalse(storage.exists(KEY));
+    }
+}
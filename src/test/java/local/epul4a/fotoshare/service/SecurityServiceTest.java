@@ -1,5 +1,7 @@
 package local.epul4a.fotoshare.service;
 
+import local.epul4a.fotoshare.config.AuthenticatedUser;
+import local.epul4a.fotoshare.dto.PhotoAclDTO;
 import local.epul4a.fotoshare.entity.Share;
 import local.epul4a.fotoshare.entity.Photo;
 import local.epul4a.fotoshare.entity.User;
@@ -12,9 +14,13 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -40,6 +46,9 @@ class SecurityServiceTest {
     @Mock
     private Authentication authentication;
 
+    @Spy
+    private PhotoAclCache aclCache = new PhotoAclCache(1000);
+
     @InjectMocks
     private SecurityService securityService;
 
@@ -91,13 +100,13 @@ class SecurityServiceTest {
         when(authentication.getName()).thenReturn("userA");
         when(userRepository.findByUsername("userA")).thenReturn(Optional.of(userA));
         when(photoRepository.findById(100L)).thenReturn(Optional.of(privatePhotoB));
-        when(shareRepository.existsByPhotoAndUser(privatePhotoB, userA)).thenReturn(false);
+        when(shareRepository.findPermissionLevel(100L, 1L)).thenReturn(Optional.empty());
 
         boolean canAccess = securityService.canAccessPhoto(authentication, 100L);
 
         assertFalse(canAccess, "User A ne devrait PAS pouvoir accéder à la photo privée de B");
         verify(photoRepository).findById(100L);
-        verify(shareRepository).existsByPhotoAndUser(privatePhotoB, userA);
+        verify(shareRepository).findPermissionLevel(100L, 1L);
     }
 
     @Test
@@ -107,12 +116,46 @@ class SecurityServiceTest {
         when(authentication.getName()).thenReturn("userA");
         when(userRepository.findByUsername("userA")).thenReturn(Optional.of(userA));
         when(photoRepository.findById(102L)).thenReturn(Optional.of(sharedPhotoB));
-        when(shareRepository.existsByPhotoAndUser(sharedPhotoB, userA)).thenReturn(true);
+        when(shareRepository.findPermissionLevel(102L, 1L)).thenReturn(Optional.of(Share.PermissionLevel.READ));
 
         boolean canAccess = securityService.canAccessPhoto(authentication, 102L);
 
         assertTrue(canAccess, "User A devrait pouvoir accéder à la photo partagée");
-        verify(shareRepository).existsByPhotoAndUser(sharedPhotoB, userA);
+        verify(shareRepository).findPermissionLevel(102L, 1L);
+    }
+
+    @Test
+    @DisplayName("Utilisateur connecté par formulaire : l'accès est vérifié sans relire l'utilisateur en base")
+    void authenticatedPrincipal_DoesNotReloadUser() {
+        userA.setPasswordHash("hash");
+        AuthenticatedUser principal = new AuthenticatedUser(userA, 0);
+        Authentication login = UsernamePasswordAuthenticationToken.authenticated(principal, null, principal.getAuthorities());
+        when(photoRepository.findById(102L)).thenReturn(Optional.of(sharedPhotoB));
+        when(shareRepository.findPermissionLevel(102L, 1L)).thenReturn(Optional.of(Share.PermissionLevel.READ));
+
+        assertTrue(securityService.canAccessPhoto(login, 102L));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    @DisplayName("Les droits sont relus en cache, l'absence de partage comprise, jusqu'à l'invalidation de la photo")
+    void canAccessPhoto_CachesNegativeLookupUntilInvalidated() {
+        when(authentication.isAuthenticated()).thenReturn(true);
+        when(authentication.getName()).thenReturn("userA");
+        when(userRepository.findByUsername("userA")).thenReturn(Optional.of(userA));
+        when(photoRepository.findById(102L)).thenReturn(Optional.of(sharedPhotoB));
+        when(shareRepository.findPermissionLevel(102L, 1L))
+                .thenReturn(Optional.empty(), Optional.of(Share.PermissionLevel.READ));
+
+        assertFalse(securityService.canAccessPhoto(authentication, 102L));
+        assertFalse(securityService.canAccessPhoto(authentication, 102L));
+        verify(photoRepository, times(1)).findById(102L);
+        verify(shareRepository, times(1)).findPermissionLevel(102L, 1L);
+
+        aclCache.invalidate(102L);
+
+        assertTrue(securityService.canAccessPhoto(authentication, 102L));
+        verify(shareRepository, times(2)).findPermissionLevel(102L, 1L);
     }
 
     @Test
@@ -178,7 +221,7 @@ class SecurityServiceTest {
         when(authentication.getName()).thenReturn("userA");
         when(userRepository.findByUsername("userA")).thenReturn(Optional.of(userA));
         when(photoRepository.findById(100L)).thenReturn(Optional.of(privatePhotoB));
-        when(shareRepository.findByPhotoAndUser(privatePhotoB, userA)).thenReturn(Optional.empty());
+        when(shareRepository.findPermissionLevel(100L, 1L)).thenReturn(Optional.empty());
 
         boolean canEdit = securityService.canEditPhoto(authentication, 100L);
 
@@ -197,7 +240,7 @@ class SecurityServiceTest {
         when(authentication.getName()).thenReturn("userA");
         when(userRepository.findByUsername("userA")).thenReturn(Optional.of(userA));
         when(photoRepository.findById(102L)).thenReturn(Optional.of(sharedPhotoB));
-        when(shareRepository.findByPhotoAndUser(sharedPhotoB, userA)).thenReturn(Optional.of(share));
+        when(shareRepository.findPermissionLevel(102L, 1L)).thenReturn(Optional.of(share.getPermissionLevel()));
 
         boolean canEdit = securityService.canEditPhoto(authentication, 102L);
 
@@ -229,7 +272,7 @@ class SecurityServiceTest {
         when(authentication.getName()).thenReturn("userA");
         when(userRepository.findByUsername("userA")).thenReturn(Optional.of(userA));
         when(photoRepository.findById(102L)).thenReturn(Optional.of(sharedPhotoB));
-        when(shareRepository.findByPhotoAndUser(sharedPhotoB, userA)).thenReturn(Optional.of(share));
+        when(shareRepository.findPermissionLevel(102L, 1L)).thenReturn(Optional.of(share.getPermissionLevel()));
 
         boolean canEdit = securityService.canEditPhoto(authentication, 102L);
 
@@ -291,7 +334,7 @@ class SecurityServiceTest {
         when(authentication.getName()).thenReturn("userA");
         when(userRepository.findByUsername("userA")).thenReturn(Optional.of(userA));
         when(photoRepository.findById(101L)).thenReturn(Optional.of(publicPhotoB));
-        when(shareRepository.findByPhotoAndUser(publicPhotoB, userA)).thenReturn(Optional.empty());
+        when(shareRepository.findPermissionLevel(101L, 1L)).thenReturn(Optional.empty());
 
         boolean canComment = securityService.canCommentPhoto(authentication, 101L);
 
@@ -310,7 +353,7 @@ class SecurityServiceTest {
         when(authentication.getName()).thenReturn("userA");
         when(userRepository.findByUsername("userA")).thenReturn(Optional.of(userA));
         when(photoRepository.findById(102L)).thenReturn(Optional.of(sharedPhotoB));
-        when(shareRepository.findByPhotoAndUser(sharedPhotoB, userA)).thenReturn(Optional.of(share));
+        when(shareRepository.findPermissionLevel(102L, 1L)).thenReturn(Optional.of(share.getPermissionLevel()));
 
         boolean canComment = securityService.canCommentPhoto(authentication, 102L);
 
@@ -324,7 +367,7 @@ class SecurityServiceTest {
         when(authentication.getName()).thenReturn("userA");
         when(userRepository.findByUsername("userA")).thenReturn(Optional.of(userA));
         when(photoRepository.findById(100L)).thenReturn(Optional.of(privatePhotoB));
-        when(shareRepository.findByPhotoAndUser(privatePhotoB, userA)).thenReturn(Optional.empty());
+        when(shareRepository.findPermissionLevel(100L, 1L)).thenReturn(Optional.empty());
 
         boolean canComment = securityService.canCommentPhoto(authentication, 100L);
 
@@ -375,5 +418,27 @@ class SecurityServiceTest {
 
         assertNull(level, "Le niveau de permission devrait être null s'il n'y a pas de share");
     }
-}
 
+    // ==================== Tests permissionLevels ====================
+
+    @Test
+    @DisplayName("permissionLevels résout une page en une requête puis sert la suivante depuis le cache")
+    void permissionLevels_ResolvesPageInOneQuery() {
+        when(authentication.isAuthenticated()).thenReturn(true);
+        when(authentication.getName()).thenReturn("userA");
+        when(userRepository.findByUsername("userA")).thenReturn(Optional.of(userA));
+        when(photoRepository.findAcls(List.of(100L, 101L, 102L), 1L)).thenReturn(List.of(
+                new PhotoAclDTO(100L, 2L, Photo.Visibility.PRIVATE, null),
+                new PhotoAclDTO(101L, 2L, Photo.Visibility.PUBLIC, null),
+                new PhotoAclDTO(102L, 2L, Photo.Visibility.PRIVATE, Share.PermissionLevel.COMMENT)));
+
+        Map<Long, Share.PermissionLevel> levels = securityService.permissionLevels(authentication, List.of(100L, 101L, 102L));
+
+        assertEquals(Map.of(101L, Share.PermissionLevel.READ, 102L, Share.PermissionLevel.COMMENT), levels);
+        assertEquals(levels.keySet(), securityService.canAccessPhotos(authentication, List.of(100L, 101L, 102L)));
+        assertFalse(securityService.canAccessPhoto(authentication, 100L));
+        verify(photoRepository, times(1)).findAcls(anyCollection(), any());
+        verify(photoRepository, never()).findById(any());
+        verifyNoInteractions(shareRepository);
+    }
+}
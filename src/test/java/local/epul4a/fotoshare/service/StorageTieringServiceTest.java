@@ -0,0 +1,92 @@
+package local.epul4a.fotoshare.service;
+
+import local.epul4a.fotoshare.dto.PhotoImageDTO;
+import local.epul4a.fotoshare.entity.Photo;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests du passage des originaux peu lus vers le stockage froid et de leur remontée
+ */
+@DisplayName("Tests du StorageTieringService")
+class StorageTieringServiceTest {
+
+    private static final String STORAGE = "0b6f4c1e-7d2a-4f7e-9c1b-1f2e3d4c5b6a.jpg";
+
+    @TempDir
+    Path tempDir;
+
+    private UploadLayout hot;
+    private UploadLayout cold;
+    private FileSystemPhotoStorage storage;
+    private PhotoRepository photoRepository;
+    private StorageTieringService tieringService;
+
+    @BeforeEach
+    void setUp() {
+        hot = new UploadLayout(tempDir.resolve("hot").toString());
+        cold = new UploadLayout(tempDir.resolve("cold").toString());
+        storage = new FileSystemPhotoStorage(new StorageVolumes(hot, "default", "", 4, DataSize.ofBytes(0), "",
+                tempDir.resolve("cold").toString()));
+        photoRepository = mock(PhotoRepository.class);
+        // Exécution synchrone des remontées
+        tieringService = new StorageTieringService(storage, photoRepository, Runnable::run);
+        ReflectionTestUtils.setField(tieringService, "batchSize", 10);
+    }
+
+    @Test
+    @DisplayName("Un original non lu passe au niveau froid, sa miniature reste sur le volume")
+    void run_MovesOriginalToColdTier() throws IOException {
+        Files.write(hot.prepareWrite(STORAGE, STORAGE), new byte[]{1, 2});
+        Files.write(hot.prepareWrite(STORAGE, "thumb_" + STORAGE), new byte[]{3});
+        Photo photo = new Photo();
+        photo.setStorageFilename(STORAGE);
+        when(photoRepository.findColdCandidates(any(), eq(""), any())).thenReturn(List.of(STORAGE));
+        when(photoRepository.findFirstByStorageFilename(STORAGE)).thenReturn(Optional.of(photo));
+
+        tieringService.run();
+
+        assertTrue(Files.exists(cold.resolve(STORAGE)));
+        assertFalse(Files.exists(hot.resolve(STORAGE)));
+        assertTrue(Files.exists(hot.resolve(STORAGE, "thumb_" + STORAGE)));
+        verify(photoRepository).updateStorageTier(STORAGE, Photo.StorageTier.COLD);
+        assertEquals(1, tieringService.getDemotedCount());
+
+        // Lecture avec une clé encore au niveau chaud (base pas encore relue)
+        try (InputStream in = storage.get(StorageKey.original(null, STORAGE))) {
+            assertArrayEquals(new byte[]{1, 2}, in.readAllBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("La lecture d'un original froid le fait remonter sur son volume")
+    void promote_MovesOriginalBackToVolume() throws IOException {
+        Files.write(cold.prepareWrite(STORAGE, STORAGE), new byte[]{1, 2});
+        PhotoImageDTO image = new PhotoImageDTO(1L, STORAGE, null, Photo.StorageTier.COLD, "thumb_" + STORAGE,
+                "image/jpeg", Photo.Visibility.PUBLIC, 2L, null, Photo.ProcessingStatus.READY, null, true);
+
+        tieringService.promote(image);
+
+        assertArrayEquals(new byte[]{1, 2}, Files.readAllBytes(hot.resolve(STORAGE)));
+        assertFalse(Files.exists(cold.resolve(STORAGE)));
+        verify(photoRepository).updateStorageTier(STORAGE, Photo.StorageTier.HOT);
+        assertEquals(1, tieringService.getPromotedCount());
+    }
+}
@@ -0,0 +1,73 @@
+package local.epul4a.fotoshare.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du placement des nouveaux fichiers sur les volumes de stockage
+ */
+@DisplayName("Tests des StorageVolumes")
+class StorageVolumesTest {
+
+    @TempDir
+    Path tempDir;
+
+    private StorageVolumes volumes(int writeConcurrency) {
+        return new StorageVolumes(new UploadLayout(tempDir.resolve("a").toString()), "default",
+                "disk2=" + tempDir.resolve("b"), writeConcurrency, DataSize.ofBytes(0), "", "");
+    }
+
+    @Test
+    @DisplayName("Un volume en cours de vidage ne reçoit plus de nouveaux fichiers")
+    void reserve_SkipsDrainingVolume() throws IOException {
+        StorageVolumes volumes = volumes(4);
+        volumes.setDraining("default", true);
+
+        for (int i = 0; i < 20; i++) {
+            try (VolumeReservation reservation = volumes.reserve(100)) {
+                assertEquals("disk2", reservation.volume());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Un volume qui a atteint sa limite d'écritures est évité tant qu'un autre est libre")
+    void reserve_PrefersVolumeWithFreeWriteSlot() throws IOException {
+        StorageVolumes volumes = volumes(1);
+
+        try (VolumeReservation first = volumes.reserve(100);
+             VolumeReservation second = volumes.reserve(100)) {
+            assertNotEquals(first.volume(), second.volume());
+            assertEquals(1, volumes.get(first.volume()).getActiveWrites());
+            assertEquals(1, volumes.get(second.volume()).getActiveWrites());
+        }
+        assertEquals(0, volumes.get("default").getActiveWrites());
+        assertEquals(0, volumes.get("disk2").getActiveWrites());
+    }
+
+    @Test
+    @DisplayName("Aucun volume disponible : l'upload est refusé")
+    void reserve_FailsWhenEveryVolumeIsDraining() {
+        StorageVolumes volumes = volumes(4);
+        volumes.setDraining("default", true);
+        volumes.setDraining("disk2", true);
+
+        assertThrows(IOException.class, () -> volumes.reserve(100));
+    }
+
+    @Test
+    @DisplayName("Une photo sans volume enregistré est sur le volume par défaut")
+    void get_NullVolume_IsDefaultVolume() {
+        StorageVolumes volumes = volumes(4);
+
+        assertEquals("default", volumes.get(null).getName());
+        assertNull(volumes.get("inconnu"));
+    }
+}
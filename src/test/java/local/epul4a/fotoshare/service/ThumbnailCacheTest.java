@@ -0,0 +1,81 @@
+package local.epul4a.fotoshare.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du cache mémoire des miniatures
+ */
+@DisplayName("Tests du ThumbnailCache")
+class ThumbnailCacheTest {
+
+    // 16 segments de 1 Ko chacun
+    private static final long SEGMENT_BYTES = 1024;
+
+    private ThumbnailCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ThumbnailCache(DataSize.ofKilobytes(16));
+    }
+
+    @Test
+    @DisplayName("Une miniature mise en cache est resservie avec le même ETag")
+    void get_ReturnsCachedBytes_WhenEtagMatches() {
+        byte[] data = new byte[100];
+        cache.put(1L, "\"a\"", data);
+
+        assertSame(data, cache.get(1L, "\"a\""));
+        assertEquals(1, cache.getHits());
+        assertEquals(100, cache.getSizeBytes());
+    }
+
+    @Test
+    @DisplayName("Un ETag différent est un échec : la miniature a été régénérée")
+    void get_ReturnsNull_WhenEtagChanged() {
+        cache.put(1L, "\"a\"", new byte[100]);
+
+        assertNull(cache.get(1L, "\"b\""));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    @DisplayName("Le budget en octets est respecté en évinçant la moins récemment utilisée")
+    void put_EvictsLeastRecentlyUsed_WhenOverBudget() {
+        // Les identifiants 1, 17 et 33 tombent dans le même segment
+        cache.put(1L, "\"1\"", new byte[400]);
+        cache.put(17L, "\"17\"", new byte[400]);
+        cache.get(1L, "\"1\"");
+        cache.put(33L, "\"33\"", new byte[400]);
+
+        assertNotNull(cache.get(1L, "\"1\""));
+        assertNull(cache.get(17L, "\"17\""));
+        assertNotNull(cache.get(33L, "\"33\""));
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.getSizeBytes() <= SEGMENT_BYTES);
+    }
+
+    @Test
+    @DisplayName("Une miniature plus grosse qu'un segment n'est pas mise en cache")
+    void put_IgnoresEntriesLargerThanSegment() {
+        cache.put(1L, "\"a\"", new byte[(int) SEGMENT_BYTES + 1]);
+
+        assertNull(cache.get(1L, "\"a\""));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    @DisplayName("La suppression d'une photo retire sa miniature du cache")
+    void invalidate_RemovesEntry() {
+        cache.put(1L, "\"a\"", new byte[100]);
+
+        cache.invalidate(1L);
+
+        assertNull(cache.get(1L, "\"a\""));
+        assertEquals(0, cache.getSizeBytes());
+    }
+}
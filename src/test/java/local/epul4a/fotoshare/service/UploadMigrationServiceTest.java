@@ -0,0 +1,64 @@
+package local.epul4a.fotoshare.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de la répartition des fichiers en sous-répertoires et de la migration de l'ancienne disposition
+ */
+@DisplayName("Tests de l'UploadLayout et de l'UploadMigrationService")
+class UploadMigrationServiceTest {
+
+    private static final String STORAGE = "0b6f4c1e-7d2a-4f7e-9c1b-1f2e3d4c5b6a.jpg";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Un original et ses déclinaisons sont déplacés ensemble dans le même sous-répertoire")
+    void run_MovesOriginalAndRenditionsIntoSameShard() throws IOException {
+        UploadLayout layout = new UploadLayout(tempDir.toString());
+        Files.write(tempDir.resolve(STORAGE), new byte[]{1});
+        Files.write(tempDir.resolve("thumb_" + STORAGE), new byte[]{2});
+        Files.write(tempDir.resolve("r640_" + STORAGE), new byte[]{3});
+        Files.write(tempDir.resolve(".upload-123.tmp"), new byte[]{4});
+
+        migrationService(layout).run();
+
+        Path original = layout.shardedPath(STORAGE, STORAGE);
+        assertArrayEquals(new byte[]{1}, Files.readAllBytes(original));
+        assertEquals(original.getParent(), layout.shardedPath(STORAGE, "thumb_" + STORAGE).getParent());
+        assertTrue(Files.exists(layout.shardedPath(STORAGE, "thumb_" + STORAGE)));
+        assertTrue(Files.exists(layout.shardedPath(STORAGE, "r640_" + STORAGE)));
+        assertFalse(Files.exists(tempDir.resolve(STORAGE)));
+        assertTrue(Files.exists(tempDir.resolve(".upload-123.tmp")), "Les uploads en cours ne doivent pas être déplacés");
+    }
+
+    @Test
+    @DisplayName("Pendant la migration, un fichier est trouvé dans l'ancienne comme dans la nouvelle disposition")
+    void resolve_FindsFilesInBothLayouts() throws IOException {
+        UploadLayout layout = new UploadLayout(tempDir.toString());
+        Files.write(tempDir.resolve(STORAGE), new byte[]{1});
+
+        assertEquals(tempDir.resolve(STORAGE), layout.resolve(STORAGE));
+
+        migrationService(layout).run();
+
+        assertEquals(layout.shardedPath(STORAGE, STORAGE), layout.resolve(STORAGE));
+    }
+
+    private UploadMigrationService migrationService(UploadLayout layout) {
+        UploadMigrationService migrationService = new UploadMigrationService(layout);
+        ReflectionTestUtils.setField(migrationService, "batchSize", 2);
+        ReflectionTestUtils.setField(migrationService, "pauseMillis", 0L);
+        return migrationService;
+    }
+}